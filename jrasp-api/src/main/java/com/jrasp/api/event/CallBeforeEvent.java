@@ -10,6 +10,11 @@ public class CallBeforeEvent extends InvokeEvent {
 
     public final String desc;
 
+    /**
+     * 调用点描述，lineNumber/owner/name/desc都取自于此
+     */
+    public final CallSite callSite;
+
     public CallBeforeEvent(final int processId,
                            final int invokeId,
                            final int lineNumber,
@@ -21,6 +26,18 @@ public class CallBeforeEvent extends InvokeEvent {
         this.owner = owner;
         this.name = name;
         this.desc = desc;
+        this.callSite = new CallSite(CallSite.UNREGISTERED_ID, lineNumber, owner, name, desc);
+    }
+
+    public CallBeforeEvent(final int processId,
+                           final int invokeId,
+                           final CallSite callSite) {
+        super(processId, invokeId, Type.CALL_BEFORE);
+        this.lineNumber = callSite.lineNumber;
+        this.owner = callSite.owner;
+        this.name = callSite.name;
+        this.desc = callSite.desc;
+        this.callSite = callSite;
     }
 
 }
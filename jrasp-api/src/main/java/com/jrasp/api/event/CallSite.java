@@ -0,0 +1,86 @@
+package com.jrasp.api.event;
+
+/**
+ * 调用点描述
+ * <p>
+ * 在织入时生成，同一个调用点在整个生命周期内只有一份，不可变。
+ * 织入代码只传递调用点ID，事件中携带的就是这里预先计算好的描述
+ * </p>
+ */
+public class CallSite {
+
+    /**
+     * 未注册的调用点ID
+     */
+    public static final int UNREGISTERED_ID = -1;
+
+    /**
+     * 调用点ID
+     */
+    public final int id;
+
+    /**
+     * 调用所在行号
+     */
+    public final int lineNumber;
+
+    /**
+     * 被调用方法的声明类，Java类名格式
+     */
+    public final String owner;
+
+    /**
+     * 被调用方法名
+     */
+    public final String name;
+
+    /**
+     * 被调用方法描述
+     */
+    public final String desc;
+
+    public CallSite(final int id,
+                    final int lineNumber,
+                    final String owner,
+                    final String name,
+                    final String desc) {
+        this.id = id;
+        this.lineNumber = lineNumber;
+        this.owner = owner;
+        this.name = name;
+        this.desc = desc;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = lineNumber;
+        result = 31 * result + owner.hashCode();
+        result = 31 * result + name.hashCode();
+        result = 31 * result + desc.hashCode();
+        return result;
+    }
+
+    /**
+     * 调用点相同与否只看调用位置和被调用方法，不看ID
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CallSite)) {
+            return false;
+        }
+        final CallSite callSite = (CallSite) obj;
+        return lineNumber == callSite.lineNumber
+                && owner.equals(callSite.owner)
+                && name.equals(callSite.name)
+                && desc.equals(callSite.desc);
+    }
+
+    @Override
+    public String toString() {
+        return owner + "#" + name + desc + ":" + lineNumber;
+    }
+
+}
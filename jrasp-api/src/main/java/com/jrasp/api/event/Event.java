@@ -17,7 +17,8 @@ public abstract class Event {
         CALL_RETURN,
         CALL_THROWS,
         IMMEDIATELY_RETURN,
-        IMMEDIATELY_THROWS;
+        IMMEDIATELY_THROWS,
+        LINE_COVERAGE;
         public static final Type[] EMPTY = new Type[0];
     }
 
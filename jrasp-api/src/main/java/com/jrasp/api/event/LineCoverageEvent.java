@@ -0,0 +1,77 @@
+package com.jrasp.api.event;
+
+import static com.jrasp.api.event.Event.Type.LINE_COVERAGE;
+
+/**
+ * 行覆盖事件
+ * <p>
+ * 方法返回或抛出异常之前产生一次，携带本次调用执行过的源码行。
+ * 第N位(从0开始)表示第{@code firstLineNumber + N}行是否执行过
+ * </p>
+ */
+public class LineCoverageEvent extends InvokeEvent {
+
+    // 方法的起始行号
+    public final int firstLineNumber;
+
+    // 行覆盖位图，按调用深度复用，只在本次调用返回之前有效，需要继续持有时必须复制
+    public final long[] bitmap;
+
+    public LineCoverageEvent(int processId, int invokeId, int firstLineNumber, long[] bitmap) {
+        super(processId, invokeId, LINE_COVERAGE);
+        this.firstLineNumber = firstLineNumber;
+        this.bitmap = bitmap;
+    }
+
+    /**
+     * 判断某行是否执行过
+     *
+     * @param lineNumber 源码行号
+     * @return TRUE:执行过;FALSE:没有执行过
+     */
+    public boolean isCovered(final int lineNumber) {
+        return isCovered(bitmap, firstLineNumber, lineNumber);
+    }
+
+    /**
+     * 获取执行过的源码行号
+     *
+     * @return 按升序排列的行号
+     */
+    public int[] getCoveredLineNumbers() {
+        return getCoveredLineNumbers(bitmap, firstLineNumber);
+    }
+
+    public static boolean isCovered(final long[] bitmap,
+                                    final int firstLineNumber,
+                                    final int lineNumber) {
+        final int index = lineNumber - firstLineNumber;
+        return null != bitmap
+                && index >= 0
+                && (index >>> 6) < bitmap.length
+                && (bitmap[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+
+    public static int[] getCoveredLineNumbers(final long[] bitmap,
+                                              final int firstLineNumber) {
+        if (null == bitmap) {
+            return new int[0];
+        }
+        int count = 0;
+        for (final long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        final int[] lineNumbers = new int[count];
+        int pos = 0;
+        for (int wordIndex = 0; wordIndex < bitmap.length; wordIndex++) {
+            long word = bitmap[wordIndex];
+            while (word != 0) {
+                final int bit = Long.numberOfTrailingZeros(word);
+                lineNumbers[pos++] = firstLineNumber + (wordIndex << 6) + bit;
+                word &= word - 1;
+            }
+        }
+        return lineNumbers;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.jrasp.api.filter;
+
+/**
+ * 调用点过滤器
+ * <p>
+ * 观察条件({@link Filter}或{@link com.jrasp.api.listener.ext.EventWatchCondition})同时实现了本接口时，
+ * 织入CALL_BEFORE/CALL_RETURN/CALL_THROWS事件时只会增强过滤通过的方法调用，其余调用保持原样。
+ * 过滤在织入时进行，运行时没有任何额外开销
+ * </p>
+ */
+public interface CallSiteFilter {
+
+    /**
+     * 调用点过滤
+     *
+     * @param ownerJavaClassName 被调用方法的声明类
+     * @param javaMethodName     被调用方法名
+     * @param javaMethodDesc     被调用方法描述
+     * @return TRUE:增强这个调用点;FALSE:不增强
+     */
+    boolean doCallSiteFilter(String ownerJavaClassName,
+                             String javaMethodName,
+                             String javaMethodDesc);
+
+}
@@ -0,0 +1,64 @@
+package com.jrasp.api.filter;
+
+/**
+ * 声明了匹配能力的过滤器
+ * <p>
+ * 过滤器通过{@link #getCapabilities()}告知匹配器自己真正会读取哪些类型信息，
+ * 匹配器只为声明过的能力去解析父类、接口、注解等家族信息，未声明的参数一律传入null
+ * </p>
+ * <p>
+ * 名称粗筛方法会在任何家族信息被解析之前调用，只要返回false，该类/方法就不会再参与后续匹配
+ * </p>
+ */
+public interface CapabilityFilter extends Filter {
+
+    int CAP_SUPER_CLASS_TYPE = 0x01 << 0;
+    int CAP_CLASS_INTERFACE_TYPES = 0x01 << 1;
+    int CAP_CLASS_ANNOTATION_TYPES = 0x01 << 2;
+    int CAP_BEHAVIOR_PARAMETER_TYPES = 0x01 << 3;
+    int CAP_BEHAVIOR_THROWS_TYPES = 0x01 << 4;
+    int CAP_BEHAVIOR_ANNOTATION_TYPES = 0x01 << 5;
+
+    int CAP_NONE = 0;
+    int CAP_ALL = CAP_SUPER_CLASS_TYPE
+            | CAP_CLASS_INTERFACE_TYPES
+            | CAP_CLASS_ANNOTATION_TYPES
+            | CAP_BEHAVIOR_PARAMETER_TYPES
+            | CAP_BEHAVIOR_THROWS_TYPES
+            | CAP_BEHAVIOR_ANNOTATION_TYPES;
+
+    /**
+     * 获取过滤器需要读取的类型信息
+     *
+     * @return CAP_*的组合
+     */
+    int getCapabilities();
+
+    /**
+     * 类名粗筛
+     *
+     * @param javaClassName 类名
+     * @return FALSE:该类不可能匹配;TRUE:需要进一步交由{@link #doClassFilter}判断
+     */
+    boolean doClassNameFilter(String javaClassName);
+
+    /**
+     * 方法名粗筛
+     *
+     * @param javaMethodName 方法名
+     * @return FALSE:该方法不可能匹配;TRUE:需要进一步交由{@link #doMethodFilter}判断
+     */
+    boolean doMethodNameFilter(String javaMethodName);
+
+    /**
+     * 类名是否被精确指定(而非通配/子类匹配)
+     * <p>
+     * 精确指定的类风险最高，重新形变时会被排在最前面
+     * </p>
+     *
+     * @param javaClassName 类名
+     * @return TRUE:精确指定;FALSE:非精确指定
+     */
+    boolean isExplicitClassName(String javaClassName);
+
+}
@@ -3,6 +3,12 @@ package com.jrasp.api.filter;
 import com.jrasp.api.annotation.IncludeBootstrap;
 import com.jrasp.api.annotation.IncludeSubClasses;
 
+/**
+ * 扩展过滤器
+ * <p>
+ * 和{@link Filter}一样会被多个扫描线程同时调用，实现需要是线程安全的
+ * </p>
+ */
 public interface ExtFilter extends Filter {
 
     boolean isIncludeSubClasses();
@@ -14,48 +20,7 @@ public interface ExtFilter extends Filter {
         public static ExtFilter make(final Filter filter,
                                      final boolean isIncludeSubClasses,
                                      final boolean isIncludeBootstrap) {
-            return new ExtFilter() {
-
-                @Override
-                public boolean isIncludeSubClasses() {
-                    return isIncludeSubClasses;
-                }
-
-                @Override
-                public boolean isIncludeBootstrap() {
-                    return isIncludeBootstrap;
-                }
-
-                @Override
-                public boolean doClassFilter(final int access,
-                                             final String javaClassName,
-                                             final String superClassTypeJavaClassName,
-                                             final String[] interfaceTypeJavaClassNameArray,
-                                             final String[] annotationTypeJavaClassNameArray) {
-                    return filter.doClassFilter(
-                            access,
-                            javaClassName,
-                            superClassTypeJavaClassName,
-                            interfaceTypeJavaClassNameArray,
-                            annotationTypeJavaClassNameArray
-                    );
-                }
-
-                @Override
-                public boolean doMethodFilter(final int access,
-                                              final String javaMethodName,
-                                              final String[] parameterTypeJavaClassNameArray,
-                                              final String[] throwsTypeJavaClassNameArray,
-                                              final String[] annotationTypeJavaClassNameArray) {
-                    return filter.doMethodFilter(
-                            access,
-                            javaMethodName,
-                            parameterTypeJavaClassNameArray,
-                            throwsTypeJavaClassNameArray,
-                            annotationTypeJavaClassNameArray
-                    );
-                }
-            };
+            return new CapabilityExtFilter(filter, isIncludeSubClasses, isIncludeBootstrap);
         }
 
         public static ExtFilter make(final Filter filter) {
@@ -69,6 +34,92 @@ public interface ExtFilter extends Filter {
                     );
         }
 
+        /**
+         * 代理过滤器，同时透传被代理过滤器声明的匹配能力
+         * <p>
+         * 被代理的过滤器没有声明能力时，认为它需要读取全部类型信息
+         * </p>
+         */
+        private static class CapabilityExtFilter implements ExtFilter, CapabilityFilter {
+
+            private final Filter filter;
+            private final boolean isIncludeSubClasses;
+            private final boolean isIncludeBootstrap;
+
+            CapabilityExtFilter(final Filter filter,
+                                final boolean isIncludeSubClasses,
+                                final boolean isIncludeBootstrap) {
+                this.filter = filter;
+                this.isIncludeSubClasses = isIncludeSubClasses;
+                this.isIncludeBootstrap = isIncludeBootstrap;
+            }
+
+            @Override
+            public boolean isIncludeSubClasses() {
+                return isIncludeSubClasses;
+            }
+
+            @Override
+            public boolean isIncludeBootstrap() {
+                return isIncludeBootstrap;
+            }
+
+            @Override
+            public int getCapabilities() {
+                return filter instanceof CapabilityFilter
+                        ? ((CapabilityFilter) filter).getCapabilities()
+                        : CAP_ALL;
+            }
+
+            @Override
+            public boolean doClassNameFilter(final String javaClassName) {
+                return !(filter instanceof CapabilityFilter)
+                        || ((CapabilityFilter) filter).doClassNameFilter(javaClassName);
+            }
+
+            @Override
+            public boolean doMethodNameFilter(final String javaMethodName) {
+                return !(filter instanceof CapabilityFilter)
+                        || ((CapabilityFilter) filter).doMethodNameFilter(javaMethodName);
+            }
+
+            @Override
+            public boolean isExplicitClassName(final String javaClassName) {
+                return filter instanceof CapabilityFilter
+                        && ((CapabilityFilter) filter).isExplicitClassName(javaClassName);
+            }
+
+            @Override
+            public boolean doClassFilter(final int access,
+                                         final String javaClassName,
+                                         final String superClassTypeJavaClassName,
+                                         final String[] interfaceTypeJavaClassNameArray,
+                                         final String[] annotationTypeJavaClassNameArray) {
+                return filter.doClassFilter(
+                        access,
+                        javaClassName,
+                        superClassTypeJavaClassName,
+                        interfaceTypeJavaClassNameArray,
+                        annotationTypeJavaClassNameArray
+                );
+            }
+
+            @Override
+            public boolean doMethodFilter(final int access,
+                                          final String javaMethodName,
+                                          final String[] parameterTypeJavaClassNameArray,
+                                          final String[] throwsTypeJavaClassNameArray,
+                                          final String[] annotationTypeJavaClassNameArray) {
+                return filter.doMethodFilter(
+                        access,
+                        javaMethodName,
+                        parameterTypeJavaClassNameArray,
+                        throwsTypeJavaClassNameArray,
+                        annotationTypeJavaClassNameArray
+                );
+            }
+        }
+
     }
 
 }
@@ -1,5 +1,11 @@
 package com.jrasp.api.filter;
 
+/**
+ * 类和方法过滤器
+ * <p>
+ * 扫描已加载类时会在多个线程上同时调用同一个过滤器，实现需要是线程安全的
+ * </p>
+ */
 public interface Filter {
 
     boolean doClassFilter(int access,
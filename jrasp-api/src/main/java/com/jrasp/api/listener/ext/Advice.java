@@ -1,45 +1,95 @@
 package com.jrasp.api.listener.ext;
 
 import com.jrasp.api.event.Event;
-import com.jrasp.api.util.LazyGet;
+import com.jrasp.api.event.LineCoverageEvent;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * 通知
+ * <p>
+ * 生命周期约定：Advice只在{@link AdviceListener#before(Advice)}到{@link AdviceListener#after(Advice)}之间有效，
+ * 在after()返回之后，同一个Advice对象会被同一线程上之后的调用复用。
+ * 需要在after()之后继续持有Advice(如异步处理、放入集合)的监听器，
+ * 必须覆盖{@link AdviceListener#isAdviceRecyclable()}返回false
+ * </p>
+ */
 public class Advice implements Attachment {
 
-    private final int processId;
-    private final int invokeId;
+    private int processId;
+    private int invokeId;
 
-    private final ClassLoader loader;
-    private final LazyGet<Behavior> behaviorLazyGet;
-    private final Object[] parameterArray;
-    private final Object target;
+    private ClassLoader loader;
+    private String javaClassName;
+    private String javaMethodName;
+    private String javaMethodDesc;
+    private Behavior behavior;
+    private Object[] parameterArray;
+    private Object target;
 
     private Object returnObj;
     private Throwable throwable;
 
     private Object attachment;
-    private Set<String> marks = new HashSet<String>();
+
+    // 行覆盖位图，只有观察了行覆盖时才有
+    private long[] lineCoverageBitmap;
+    private int firstLineNumber;
+
+    // 绝大部分监听器不会用到标记，第一次使用时才分配
+    private Set<String> marks;
 
     private Advice top = this;
     private Advice parent = this;
     private Event.Type state = Event.Type.BEFORE;
 
-    Advice(final int processId,
-           final int invokeId,
-           final LazyGet<Behavior> behaviorLazyGet,
-           final ClassLoader loader,
-           final Object[] parameterArray,
-           final Object target) {
+    // 复用的Advice会一直留在线程本地的通知堆栈中，所以不能引用监听器，否则会拖住模块的ClassLoader
+    Advice() {
+    }
+
+    Advice applyInvoke(final int processId,
+                       final int invokeId,
+                       final ClassLoader loader,
+                       final String javaClassName,
+                       final String javaMethodName,
+                       final String javaMethodDesc,
+                       final Object[] parameterArray,
+                       final Object target) {
         this.processId = processId;
         this.invokeId = invokeId;
-        this.behaviorLazyGet = behaviorLazyGet;
         this.loader = loader;
+        this.javaClassName = javaClassName;
+        this.javaMethodName = javaMethodName;
+        this.javaMethodDesc = javaMethodDesc;
         this.parameterArray = parameterArray;
         this.target = target;
+        return this;
+    }
+
+    /**
+     * 释放本次调用所持有的对象，以便复用
+     */
+    void recycle() {
+        this.loader = null;
+        this.javaClassName = null;
+        this.javaMethodName = null;
+        this.javaMethodDesc = null;
+        this.behavior = null;
+        this.parameterArray = null;
+        this.target = null;
+        this.returnObj = null;
+        this.throwable = null;
+        this.attachment = null;
+        this.lineCoverageBitmap = null;
+        if (null != marks) {
+            marks.clear();
+        }
+        this.top = this;
+        this.parent = this;
+        this.state = Event.Type.BEFORE;
     }
 
     Advice applyBefore(final Advice top,
@@ -55,6 +105,13 @@ public class Advice implements Attachment {
         return this;
     }
 
+    Advice applyLineCoverage(final int firstLineNumber,
+                             final long[] lineCoverageBitmap) {
+        this.firstLineNumber = firstLineNumber;
+        this.lineCoverageBitmap = lineCoverageBitmap;
+        return this;
+    }
+
     Advice applyThrows(final Throwable throwable) {
         this.throwable = throwable;
         this.state = Event.Type.THROWS;
@@ -84,7 +141,14 @@ public class Advice implements Attachment {
     }
 
     public Behavior getBehavior() {
-        return behaviorLazyGet.get();
+        if (null == behavior) {
+            try {
+                behavior = AdviceAdapterListener.toBehavior(loader, javaClassName, javaMethodName, javaMethodDesc);
+            } catch (Throwable cause) {
+                throw new IllegalStateException(cause);
+            }
+        }
+        return behavior;
     }
 
     public ClassLoader getLoader() {
@@ -107,6 +171,29 @@ public class Advice implements Attachment {
         return throwable;
     }
 
+    /**
+     * 判断本次调用是否执行过某行
+     * <p>
+     * 只有观察了{@link EventWatchBuilder.IBuildingForWatching#withLineCoverage()}，
+     * 且在afterReturning()/afterThrowing()中才有结果
+     * </p>
+     *
+     * @param lineNumber 源码行号
+     * @return TRUE:执行过;FALSE:没有执行过或没有行覆盖信息
+     */
+    public boolean isLineCovered(final int lineNumber) {
+        return LineCoverageEvent.isCovered(lineCoverageBitmap, firstLineNumber, lineNumber);
+    }
+
+    /**
+     * 获取本次调用执行过的源码行号
+     *
+     * @return 按升序排列的行号，没有行覆盖信息时返回空数组
+     */
+    public int[] getCoveredLineNumbers() {
+        return LineCoverageEvent.getCoveredLineNumbers(lineCoverageBitmap, firstLineNumber);
+    }
+
     @Override
     public void attach(final Object attachment) {
         this.attachment = attachment;
@@ -134,15 +221,20 @@ public class Advice implements Attachment {
     }
 
     public void mark(final String mark) {
+        if (null == marks) {
+            marks = new HashSet<String>();
+        }
         marks.add(mark);
     }
 
     public boolean hasMark(final String exceptMark) {
-        return marks.contains(exceptMark);
+        return null != marks
+                && marks.contains(exceptMark);
     }
 
     public boolean unMark(final String mark) {
-        return marks.remove(mark);
+        return null != marks
+                && marks.remove(mark);
     }
 
     public void attach(final Object attachment,
@@ -2,42 +2,63 @@ package com.jrasp.api.listener.ext;
 
 import com.jrasp.api.event.*;
 import com.jrasp.api.listener.EventListener;
-import com.jrasp.api.util.BehaviorDescriptor;
-import com.jrasp.api.util.CacheGet;
-import com.jrasp.api.util.GaStringUtils;
-import com.jrasp.api.util.LazyGet;
+import com.jrasp.api.util.BehaviorCache;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AdviceAdapterListener implements EventListener {
 
     private final AdviceListener adviceListener;
 
+    // 是否复用Advice
+    private final boolean isAdviceRecyclable;
+
     public AdviceAdapterListener(final AdviceListener adviceListener) {
         this.adviceListener = adviceListener;
+        this.isAdviceRecyclable = adviceListener.isAdviceRecyclable();
     }
 
+    // 销毁纪元，每销毁一个监听器递增一次
+    private static final AtomicInteger destroyEpoch = new AtomicInteger();
+
+    private volatile boolean isDestroyed = false;
+
     private final ThreadLocal<OpStack> opStackRef = new ThreadLocal<OpStack>() {
         @Override
         protected OpStack initialValue() {
-            return new OpStack();
+            return new OpStack(isAdviceRecyclable, destroyEpoch.get());
         }
     };
 
+    /**
+     * 销毁监听器，模块卸载时调用
+     * <p>
+     * 线程本地的通知堆栈不跨线程清理：销毁后各线程在下一次事件时自行移除这个监听器的堆栈；
+     * 其他监听器在各自线程的下一次顶层调用前发现纪元变化，会重建自己的堆栈，
+     * {@link ThreadLocal#remove()}顺带清除该线程中已销毁监听器遗留的失效条目。
+     * 通知堆栈和复用的Advice都不引用监听器，即使失效条目没有被及时清除也不会拖住模块的ClassLoader
+     * </p>
+     */
+    public void destroy() {
+        isDestroyed = true;
+        destroyEpoch.incrementAndGet();
+    }
+
+    // 线程的通知堆栈在顶层调用结束后依然保留，不再每次调用都重建
     @Override
     final public void onEvent(final Event event) throws Throwable {
-        final OpStack opStack = opStackRef.get();
-        try {
-            switchEvent(opStack, event);
-        } finally {
-            // 如果执行到TOP的最后一个事件，则需要主动清理占用的资源
-            if (opStack.isEmpty()) {
-                opStackRef.remove();
-            }
+        if (isDestroyed) {
+            opStackRef.remove();
+            return;
         }
-
+        OpStack opStack = opStackRef.get();
+        // 只在没有进行中的调用时重建，不能打断BEFORE/RETURN的配对
+        if (opStack.epoch != destroyEpoch.get()
+                && opStack.isEmpty()) {
+            opStackRef.remove();
+            opStack = opStackRef.get();
+        }
+        switchEvent(opStack, event);
     }
 
 
@@ -48,27 +69,14 @@ public class AdviceAdapterListener implements EventListener {
         switch (event.type) {
             case BEFORE: {
                 final BeforeEvent bEvent = (BeforeEvent) event;
-                final ClassLoader loader = toClassLoader(bEvent.javaClassLoader);
-                final Advice advice = new Advice(
+                final WrapAdvice wrapAdvice = opStack.pushForBegin();
+                final Advice advice = wrapAdvice.advice.applyInvoke(
                         bEvent.processId,
                         bEvent.invokeId,
-                        new LazyGet<Behavior>() {
-
-                            private final ClassLoader _loader = loader;
-                            private final String _javaClassName = bEvent.javaClassName;
-                            private final String _javaMethodName = bEvent.javaMethodName;
-                            private final String _javaMethodDesc = bEvent.javaMethodDesc;
-
-                            @Override
-                            protected Behavior initialValue() throws Throwable {
-                                return toBehavior(
-                                        toClass(_loader, _javaClassName),
-                                        _javaMethodName,
-                                        _javaMethodDesc
-                                );
-                            }
-                        },
-                        loader,
+                        toClassLoader(bEvent.javaClassLoader),
+                        bEvent.javaClassName,
+                        bEvent.javaMethodName,
+                        bEvent.javaMethodDesc,
                         bEvent.argumentArray,
                         bEvent.target
                 );
@@ -77,19 +85,18 @@ public class AdviceAdapterListener implements EventListener {
                 final Advice parent;
 
                 // 顶层调用
-                if (opStack.isEmpty()) {
+                final WrapAdvice parentWrapAdvice = opStack.peekParent();
+                if (null == parentWrapAdvice) {
                     top = parent = advice;
                 }
 
                 // 非顶层
                 else {
-                    parent = opStack.peek().advice;
+                    parent = parentWrapAdvice.advice;
                     top = parent.getProcessTop();
                 }
 
                 advice.applyBefore(top, parent);
-
-                opStackRef.get().pushForBegin(advice);
                 adviceListener.before(advice);
                 break;
             }
@@ -98,7 +105,7 @@ public class AdviceAdapterListener implements EventListener {
             case IMMEDIATELY_THROWS:
             case IMMEDIATELY_RETURN: {
                 final InvokeEvent invokeEvent = (InvokeEvent) event;
-                opStack.popByExpectInvokeId(invokeEvent.invokeId);
+                opStack.recycle(opStack.popByExpectInvokeId(invokeEvent.invokeId));
                 // 修复#123
                 break;
             }
@@ -111,7 +118,11 @@ public class AdviceAdapterListener implements EventListener {
                     try {
                         adviceListener.afterReturning(advice);
                     } finally {
-                        adviceListener.after(advice);
+                        try {
+                            adviceListener.after(advice);
+                        } finally {
+                            opStack.recycle(wrapAdvice);
+                        }
                     }
                 }
                 break;
@@ -124,7 +135,11 @@ public class AdviceAdapterListener implements EventListener {
                     try {
                         adviceListener.afterThrowing(advice);
                     } finally {
-                        adviceListener.after(advice);
+                        try {
+                            adviceListener.after(advice);
+                        } finally {
+                            opStack.recycle(wrapAdvice);
+                        }
                     }
                 }
                 break;
@@ -136,19 +151,15 @@ public class AdviceAdapterListener implements EventListener {
                 if (null == wrapAdvice) {
                     return;
                 }
-                final CallTarget target;
-                wrapAdvice.attach(target = new CallTarget(
-                        cbEvent.lineNumber,
-                        toJavaClassName(cbEvent.owner),
-                        cbEvent.name,
-                        cbEvent.desc
-                ));
+                // 调用点描述在织入时就已经生成好，直接挂到通知上，不再逐次构造
+                final CallSite target = cbEvent.callSite;
+                wrapAdvice.attach(target);
                 adviceListener.beforeCall(
                         wrapAdvice.advice,
-                        target.callLineNum,
-                        target.callJavaClassName,
-                        target.callJavaMethodName,
-                        target.callJavaMethodDesc
+                        target.lineNumber,
+                        target.owner,
+                        target.name,
+                        target.desc
                 );
                 break;
             }
@@ -159,7 +170,7 @@ public class AdviceAdapterListener implements EventListener {
                 if (null == wrapAdvice) {
                     return;
                 }
-                final CallTarget target = wrapAdvice.attachment();
+                final CallSite target = wrapAdvice.attachment();
                 if (null == target) {
                     // 这里做一个容灾保护，防止在callBefore()中发生什么异常导致beforeCall()之前失败
                     return;
@@ -167,18 +178,18 @@ public class AdviceAdapterListener implements EventListener {
                 try {
                     adviceListener.afterCallReturning(
                             wrapAdvice.advice,
-                            target.callLineNum,
-                            target.callJavaClassName,
-                            target.callJavaMethodName,
-                            target.callJavaMethodDesc
+                            target.lineNumber,
+                            target.owner,
+                            target.name,
+                            target.desc
                     );
                 } finally {
                     adviceListener.afterCall(
                             wrapAdvice.advice,
-                            target.callLineNum,
-                            target.callJavaClassName,
-                            target.callJavaMethodName,
-                            target.callJavaMethodDesc,
+                            target.lineNumber,
+                            target.owner,
+                            target.name,
+                            target.desc,
                             null
                     );
                 }
@@ -191,7 +202,7 @@ public class AdviceAdapterListener implements EventListener {
                 if (null == wrapAdvice) {
                     return;
                 }
-                final CallTarget target = wrapAdvice.attachment();
+                final CallSite target = wrapAdvice.attachment();
                 if (null == target) {
                     // 这里做一个容灾保护，防止在callBefore()中发生什么异常导致beforeCall()之前失败
                     return;
@@ -199,19 +210,19 @@ public class AdviceAdapterListener implements EventListener {
                 try {
                     adviceListener.afterCallThrowing(
                             wrapAdvice.advice,
-                            target.callLineNum,
-                            target.callJavaClassName,
-                            target.callJavaMethodName,
-                            target.callJavaMethodDesc,
+                            target.lineNumber,
+                            target.owner,
+                            target.name,
+                            target.desc,
                             ctEvent.throwException
                     );
                 } finally {
                     adviceListener.afterCall(
                             wrapAdvice.advice,
-                            target.callLineNum,
-                            target.callJavaClassName,
-                            target.callJavaMethodName,
-                            target.callJavaMethodDesc,
+                            target.lineNumber,
+                            target.owner,
+                            target.name,
+                            target.desc,
                             ctEvent.throwException
                     );
                 }
@@ -228,6 +239,20 @@ public class AdviceAdapterListener implements EventListener {
                 break;
             }
 
+            case LINE_COVERAGE: {
+                final LineCoverageEvent lcEvent = (LineCoverageEvent) event;
+                final WrapAdvice wrapAdvice = opStack.peekByExpectInvokeId(lcEvent.invokeId);
+                if (null == wrapAdvice) {
+                    return;
+                }
+                // 位图按调用深度复用，本次调用返回之前一直有效；不复用的Advice可能在after()之后继续被持有，需要复制一份
+                wrapAdvice.advice.applyLineCoverage(
+                        lcEvent.firstLineNumber,
+                        isAdviceRecyclable ? lcEvent.bitmap : lcEvent.bitmap.clone()
+                );
+                break;
+            }
+
             default:
                 //ignore
         }//switch
@@ -239,27 +264,79 @@ public class AdviceAdapterListener implements EventListener {
 
     /**
      * 通知操作堆栈
+     * <p>
+     * 堆栈只在所属线程内使用，直接用数组实现，不需要任何同步。
+     * 复用Advice时，数组中栈顶之上的元素就是按调用深度保留的WrapAdvice/Advice，出栈后清理干净留给同一深度的下一次调用。
+     * 堆栈是静态内部类，不引用所属的监听器
+     * </p>
      */
-    private class OpStack {
+    private static class OpStack {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final boolean isAdviceRecyclable;
+
+        // 创建时的销毁纪元
+        private final int epoch;
+
+        private WrapAdvice[] elements = new WrapAdvice[INITIAL_CAPACITY];
 
-        private final Stack<WrapAdvice> adviceStack = new Stack<WrapAdvice>();
+        private int size = 0;
+
+        OpStack(final boolean isAdviceRecyclable,
+                final int epoch) {
+            this.isAdviceRecyclable = isAdviceRecyclable;
+            this.epoch = epoch;
+        }
 
         boolean isEmpty() {
-            return adviceStack.isEmpty();
+            return size == 0;
         }
 
         WrapAdvice peek() {
-            return adviceStack.peek();
+            return elements[size - 1];
         }
 
-        void pushForBegin(final Advice advice) {
-            adviceStack.push(new WrapAdvice(advice));
+        // 获取刚压入栈顶的通知的上一层通知
+        WrapAdvice peekParent() {
+            return size >= 2
+                    ? elements[size - 2]
+                    : null;
+        }
+
+        WrapAdvice pushForBegin() {
+            if (size == elements.length) {
+                final WrapAdvice[] newElements = new WrapAdvice[elements.length << 1];
+                System.arraycopy(elements, 0, newElements, 0, size);
+                elements = newElements;
+            }
+            WrapAdvice wrapAdvice = elements[size];
+            if (null == wrapAdvice
+                    || !isAdviceRecyclable) {
+                elements[size] = wrapAdvice = new WrapAdvice(new Advice());
+            }
+            size++;
+            return wrapAdvice;
+        }
+
+        void recycle(final WrapAdvice wrapAdvice) {
+            if (null != wrapAdvice
+                    && isAdviceRecyclable) {
+                wrapAdvice.attachment = null;
+                wrapAdvice.advice.recycle();
+            }
         }
 
         WrapAdvice pop() {
-            return !adviceStack.isEmpty()
-                    ? adviceStack.pop()
-                    : null;
+            if (size == 0) {
+                return null;
+            }
+            final WrapAdvice wrapAdvice = elements[--size];
+            // 不复用时不能让堆栈继续引用已出栈的通知
+            if (!isAdviceRecyclable) {
+                elements[size] = null;
+            }
+            return wrapAdvice;
         }
 
         /**
@@ -272,32 +349,23 @@ public class AdviceAdapterListener implements EventListener {
          * @return 如果invokeId配对成功，则返回对应的Advice，否则返回null
          */
         WrapAdvice popByExpectInvokeId(final int expectInvokeId) {
-            return !adviceStack.isEmpty()
-                    && adviceStack.peek().advice.getInvokeId() == expectInvokeId
-                    ? adviceStack.pop()
+            return size > 0
+                    && peek().advice.getInvokeId() == expectInvokeId
+                    ? pop()
                     : null;
         }
 
         WrapAdvice peekByExpectInvokeId(final int expectInvokeId) {
-            return !adviceStack.isEmpty()
-                    && adviceStack.peek().advice.getInvokeId() == expectInvokeId
-                    ? adviceStack.peek()
+            return size > 0
+                    && peek().advice.getInvokeId() == expectInvokeId
+                    ? peek()
                     : null;
         }
 
     }
 
-    // change internalClassName to javaClassName
-    private String toJavaClassName(final String internalClassName) {
-        if (GaStringUtils.isEmpty(internalClassName)) {
-            return internalClassName;
-        } else {
-            return internalClassName.replaceAll("/", ".");
-        }
-    }
-
     // 提取ClassLoader，从BeforeEvent中获取到的ClassLoader
-    private ClassLoader toClassLoader(ClassLoader loader) {
+    private static ClassLoader toClassLoader(ClassLoader loader) {
         return null == loader
                 // 如果此处为null，则说明遇到了来自Bootstrap的类，
                 ? AdviceAdapterListener.class.getClassLoader()
@@ -305,89 +373,11 @@ public class AdviceAdapterListener implements EventListener {
     }
 
     // 根据JavaClassName从ClassLoader中提取出Class<?>对象
-    private Class<?> toClass(ClassLoader loader, String javaClassName) throws ClassNotFoundException {
+    private static Class<?> toClass(ClassLoader loader, String javaClassName) throws ClassNotFoundException {
         return toClassLoader(loader).loadClass(javaClassName);
     }
 
 
-    /**
-     * 行为缓存KEY对象
-     */
-    private static class BehaviorCacheKey {
-        private final Class<?> clazz;
-        private final String javaMethodName;
-        private final String javaMethodDesc;
-
-        private BehaviorCacheKey(final Class<?> clazz,
-                                 final String javaMethodName,
-                                 final String javaMethodDesc) {
-            this.clazz = clazz;
-            this.javaMethodName = javaMethodName;
-            this.javaMethodDesc = javaMethodDesc;
-        }
-
-        @Override
-        public int hashCode() {
-            return clazz.hashCode()
-                    + javaMethodName.hashCode()
-                    + javaMethodDesc.hashCode();
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (null == o
-                    || !(o instanceof BehaviorCacheKey)) {
-                return false;
-            }
-            final BehaviorCacheKey key = (BehaviorCacheKey) o;
-            return clazz.equals(key.clazz)
-                    && javaMethodName.equals(key.javaMethodName)
-                    && javaMethodDesc.equals(key.javaMethodDesc);
-        }
-
-    }
-
-    // 行为缓存，为了增加性能，不要每次都从class通过反射获取行为
-    private final CacheGet<BehaviorCacheKey, Behavior> toBehaviorCacheGet
-            = new CacheGet<BehaviorCacheKey, Behavior>() {
-        @Override
-        protected Behavior load(BehaviorCacheKey key) {
-            if ("<init>".equals(key.javaMethodName)) {
-                for (final Constructor<?> constructor : key.clazz.getDeclaredConstructors()) {
-                    if (key.javaMethodDesc.equals(new BehaviorDescriptor(constructor).getDescriptor())) {
-                        return new Behavior.ConstructorImpl(constructor);
-                    }
-                }
-            } else {
-                for (final Method method : key.clazz.getDeclaredMethods()) {
-                    if (key.javaMethodName.equals(method.getName())
-                            && key.javaMethodDesc.equals(new BehaviorDescriptor(method).getDescriptor())) {
-                        return new Behavior.MethodImpl(method);
-                    }
-                }
-            }
-            return null;
-        }
-    };
-
-    /**
-     * CALL目标对象
-     */
-    private static class CallTarget {
-
-        final int callLineNum;
-        final String callJavaClassName;
-        final String callJavaMethodName;
-        final String callJavaMethodDesc;
-
-        CallTarget(int callLineNum, String callJavaClassName, String callJavaMethodName, String callJavaMethodDesc) {
-            this.callLineNum = callLineNum;
-            this.callJavaClassName = callJavaClassName;
-            this.callJavaMethodName = callJavaMethodName;
-            this.callJavaMethodDesc = callJavaMethodDesc;
-        }
-    }
-
     /**
      * 通知内部封装，主要是要封装掉attachment
      */
@@ -411,10 +401,18 @@ public class AdviceAdapterListener implements EventListener {
         }
     }
 
-    private Behavior toBehavior(final Class<?> clazz,
+    // 解析Advice所对应的行为，Advice不持有监听器，所以这里是静态方法
+    static Behavior toBehavior(final ClassLoader loader,
+                        final String javaClassName,
+                        final String javaMethodName,
+                        final String javaMethodDesc) throws Throwable {
+        return toBehavior(toClass(loader, javaClassName), javaMethodName, javaMethodDesc);
+    }
+
+    private static Behavior toBehavior(final Class<?> clazz,
                                 final String javaMethodName,
                                 final String javaMethodDesc) throws NoSuchMethodException {
-        final Behavior behavior = toBehaviorCacheGet.getFromCache(new BehaviorCacheKey(clazz, javaMethodName, javaMethodDesc));
+        final Behavior behavior = BehaviorCache.instance.getBehavior(clazz, javaMethodName, javaMethodDesc);
         if (null == behavior) {
             throw new NoSuchMethodException(String.format("%s.%s(%s)", clazz.getName(), javaMethodName, javaMethodDesc));
         }
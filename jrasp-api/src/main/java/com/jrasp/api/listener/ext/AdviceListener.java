@@ -2,6 +2,19 @@ package com.jrasp.api.listener.ext;
 
 public class AdviceListener {
 
+    /**
+     * Advice是否允许被复用
+     * <p>
+     * 默认情况下Advice在{@link #after(Advice)}返回之后会被同一线程上之后的调用复用，
+     * 如果监听器需要在after()之后继续持有Advice，必须覆盖此方法返回false
+     * </p>
+     *
+     * @return TRUE:复用Advice;FALSE:每次调用都新建Advice
+     */
+    protected boolean isAdviceRecyclable() {
+        return true;
+    }
+
     protected void before(Advice advice) throws Throwable {
     }
 
@@ -1,11 +1,16 @@
 package com.jrasp.api.listener.ext;
 
 import com.jrasp.api.event.Event;
+import com.jrasp.api.filter.CallSiteFilter;
+import com.jrasp.api.filter.CapabilityFilter;
 import com.jrasp.api.filter.ExtFilter;
 import com.jrasp.api.filter.Filter;
 import com.jrasp.api.listener.EventListener;
+import com.jrasp.api.resource.BatchableModuleEventWatcher;
+import com.jrasp.api.resource.BatchableModuleEventWatcher.WatchBatch;
 import com.jrasp.api.resource.ModuleEventWatcher;
 import com.jrasp.api.resource.ModuleEventWatcher.Progress;
+import com.jrasp.api.resource.ModuleEventWatcher.ProgressGroup;
 import com.jrasp.api.util.GaArrayUtils;
 import com.jrasp.api.util.GaStringUtils;
 
@@ -93,8 +98,50 @@ public class EventWatchBuilder {
 
         IBuildingForWatching withCall();
 
+        /**
+         * 只观察匹配的调用点，可多次调用，任意一个匹配即增强
+         *
+         * @param ownerPattern  被调用方法声明类的匹配模式
+         * @param methodPattern 被调用方法名的匹配模式
+         * @return this
+         */
+        IBuildingForWatching withCall(String ownerPattern, String methodPattern);
+
+        /**
+         * 只观察匹配的调用点，可多次调用，任意一个匹配即增强
+         *
+         * @param ownerPattern  被调用方法声明类的匹配模式
+         * @param methodPattern 被调用方法名的匹配模式
+         * @param methodDesc    被调用方法描述，如{@code (Ljava/lang/String;)V}，为null时匹配任意描述
+         * @return this
+         */
+        IBuildingForWatching withCall(String ownerPattern, String methodPattern, String methodDesc);
+
         IBuildingForWatching withLine();
 
+        /**
+         * 观察行覆盖
+         * <p>
+         * 与{@link #withLine()}不同，执行每一行时只在本次调用的位图上置位，不产生任何事件，
+         * 位图在方法返回或抛出异常之前一次性送达，可通过{@link Advice#getCoveredLineNumbers()}获取
+         * </p>
+         *
+         * @return this
+         */
+        IBuildingForWatching withLineCoverage();
+
+        /**
+         * 只观察调用过程的最外层
+         * <p>
+         * 被观察的方法之间互相调用时(如{@code FileInputStream(File)}调用{@code FileInputStream(String)})，
+         * 嵌套的调用不再产生任何事件，效果等同于监听器只处理{@link Advice#isProcessTop()}的通知，
+         * 但嵌套调用不必再付出构造事件和调用监听器的开销
+         * </p>
+         *
+         * @return this
+         */
+        IBuildingForWatching withProcessTopOnly();
+
         EventWatcher onWatch(AdviceListener adviceListener);
 
         EventWatcher onWatch(EventListener eventListener, Event.Type... eventTypeArray);
@@ -118,6 +165,7 @@ public class EventWatchBuilder {
     }
 
     private final ModuleEventWatcher moduleEventWatcher;
+    private final WatchBatch watchBatch;
     private final PatternType patternType;
     private List<BuildingForClass> bfClasses = new ArrayList<BuildingForClass>();
 
@@ -127,10 +175,57 @@ public class EventWatchBuilder {
 
     public EventWatchBuilder(final ModuleEventWatcher moduleEventWatcher,
                              final PatternType patternType) {
+        this(moduleEventWatcher, null, patternType);
+    }
+
+    private EventWatchBuilder(final ModuleEventWatcher moduleEventWatcher,
+                              final WatchBatch watchBatch,
+                              final PatternType patternType) {
         this.moduleEventWatcher = moduleEventWatcher;
+        this.watchBatch = watchBatch;
         this.patternType = patternType;
     }
 
+    /**
+     * 开启一次批量观察
+     * <p>
+     * 观察者没有实现{@link BatchableModuleEventWatcher}时，返回的批量在登记时就立即观察，提交时不做任何事情
+     * </p>
+     *
+     * @param moduleEventWatcher 模块事件观察者
+     * @return 批量观察
+     */
+    public static WatchBatch batch(final ModuleEventWatcher moduleEventWatcher) {
+        if (moduleEventWatcher instanceof BatchableModuleEventWatcher) {
+            return ((BatchableModuleEventWatcher) moduleEventWatcher).batch();
+        }
+        return new ImmediateWatchBatch(moduleEventWatcher);
+    }
+
+    /**
+     * 构建加入批量的观察
+     * <p>
+     * 观察在{@link WatchBatch#commit(Progress)}之后才生效，多个构建器共用一个批量时只扫描/形变一次
+     * </p>
+     *
+     * @param moduleEventWatcher 模块事件观察者
+     * @param watchBatch         批量观察，由{@link #batch(ModuleEventWatcher)}获得
+     * @return 观察构建器
+     */
+    public static EventWatchBuilder inBatch(final ModuleEventWatcher moduleEventWatcher,
+                                            final WatchBatch watchBatch) {
+        return inBatch(moduleEventWatcher, watchBatch, WILDCARD);
+    }
+
+    public static EventWatchBuilder inBatch(final ModuleEventWatcher moduleEventWatcher,
+                                            final WatchBatch watchBatch,
+                                            final PatternType patternType) {
+        if (null == watchBatch) {
+            throw new IllegalArgumentException("watchBatch is null.");
+        }
+        return new EventWatchBuilder(moduleEventWatcher, watchBatch, patternType);
+    }
+
     private static boolean patternMatching(final String string,
                                            final String pattern,
                                            final PatternType patternType) {
@@ -407,6 +502,11 @@ public class EventWatchBuilder {
         private final Set<Event.Type> eventTypeSet = new HashSet<Event.Type>();
         private final List<Progress> progresses = new ArrayList<Progress>();
 
+        // 调用点匹配条件，withCall()观察所有调用点时为null
+        private List<CallSitePattern> callSitePatterns = new ArrayList<CallSitePattern>();
+
+        private boolean isProcessTopOnly = false;
+
         @Override
         public IBuildingForWatching withProgress(Progress progress) {
             if (null != progress) {
@@ -417,10 +517,39 @@ public class EventWatchBuilder {
 
         @Override
         public IBuildingForWatching withCall() {
+            addCallEventTypes();
+            callSitePatterns = null;
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withCall(final String ownerPattern,
+                                             final String methodPattern) {
+            return withCall(ownerPattern, methodPattern, null);
+        }
+
+        @Override
+        public IBuildingForWatching withCall(final String ownerPattern,
+                                             final String methodPattern,
+                                             final String methodDesc) {
+            addCallEventTypes();
+            if (null != callSitePatterns) {
+                callSitePatterns.add(new CallSitePattern(ownerPattern, methodPattern, methodDesc));
+            }
+            return this;
+        }
+
+        private void addCallEventTypes() {
             eventTypeSet.add(CALL_BEFORE);
             eventTypeSet.add(CALL_RETURN);
             eventTypeSet.add(CALL_THROWS);
-            return this;
+        }
+
+        // 没有观察CALL事件，或者观察所有调用点时不需要调用点过滤
+        private List<CallSitePattern> toCallSitePatterns() {
+            return null == callSitePatterns || callSitePatterns.isEmpty()
+                    ? null
+                    : callSitePatterns;
         }
 
         @Override
@@ -429,6 +558,18 @@ public class EventWatchBuilder {
             return this;
         }
 
+        @Override
+        public IBuildingForWatching withLineCoverage() {
+            eventTypeSet.add(LINE_COVERAGE);
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withProcessTopOnly() {
+            isProcessTopOnly = true;
+            return this;
+        }
+
         @Override
         public EventWatcher onWatch(AdviceListener adviceListener) {
             eventTypeSet.add(BEFORE);
@@ -438,22 +579,129 @@ public class EventWatchBuilder {
             eventTypeSet.add(IMMEDIATELY_THROWS);
             return build(
                     new AdviceAdapterListener(adviceListener),
-                    toProgressGroup(progresses),
+                    ProgressGroup.of(progresses),
+                    toCallSitePatterns(),
+                    isProcessTopOnly,
                     eventTypeSet.toArray(EMPTY)
             );
         }
 
         @Override
         public EventWatcher onWatch(EventListener eventListener, Event.Type... eventTypeArray) {
-            return build(eventListener, toProgressGroup(progresses), eventTypeArray);
+            return build(eventListener, ProgressGroup.of(progresses), toCallSitePatterns(), isProcessTopOnly, eventTypeArray);
+        }
+
+    }
+
+    /**
+     * 调用点匹配条件
+     */
+    private static class CallSitePattern {
+
+        private final String ownerPattern;
+        private final String methodPattern;
+        private final String methodDesc;
+
+        CallSitePattern(final String ownerPattern,
+                        final String methodPattern,
+                        final String methodDesc) {
+            this.ownerPattern = ownerPattern;
+            this.methodPattern = methodPattern;
+            this.methodDesc = methodDesc;
         }
 
     }
 
-    private EventWatchCondition toEventWatchCondition() {
+    /**
+     * 构建出的观察条件
+     */
+    private static class BuildingEventWatchCondition implements EventWatchCondition, ProcessTopOnlyCondition {
+
+        private final Filter[] orFilterArray;
+        private final boolean isProcessTopOnly;
+
+        BuildingEventWatchCondition(final Filter[] orFilterArray,
+                                    final boolean isProcessTopOnly) {
+            this.orFilterArray = orFilterArray;
+            this.isProcessTopOnly = isProcessTopOnly;
+        }
+
+        @Override
+        public Filter[] getOrFilterArray() {
+            return orFilterArray;
+        }
+
+        @Override
+        public boolean isProcessTopOnly() {
+            return isProcessTopOnly;
+        }
+
+    }
+
+    /**
+     * 带调用点过滤的观察条件
+     */
+    private class CallSiteEventWatchCondition extends BuildingEventWatchCondition implements CallSiteFilter {
+
+        private final List<CallSitePattern> callSitePatterns;
+
+        CallSiteEventWatchCondition(final Filter[] orFilterArray,
+                                    final List<CallSitePattern> callSitePatterns,
+                                    final boolean isProcessTopOnly) {
+            super(orFilterArray, isProcessTopOnly);
+            this.callSitePatterns = callSitePatterns;
+        }
+
+        @Override
+        public boolean doCallSiteFilter(final String ownerJavaClassName,
+                                        final String javaMethodName,
+                                        final String javaMethodDesc) {
+            for (final CallSitePattern callSitePattern : callSitePatterns) {
+                if (patternMatching(ownerJavaClassName, callSitePattern.ownerPattern, patternType)
+                        && patternMatching(javaMethodName, callSitePattern.methodPattern, patternType)
+                        && (null == callSitePattern.methodDesc || callSitePattern.methodDesc.equals(javaMethodDesc))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    private EventWatchCondition toEventWatchCondition(final List<CallSitePattern> callSitePatterns,
+                                                      final boolean isProcessTopOnly) {
         final List<Filter> filters = new ArrayList<Filter>();
         for (final BuildingForClass bfClass : bfClasses) {
-            final Filter filter = new Filter() {
+            final int capabilities = toCapabilities(bfClass);
+            final Filter filter = new CapabilityFilter() {
+
+                @Override
+                public int getCapabilities() {
+                    return capabilities;
+                }
+
+                @Override
+                public boolean doClassNameFilter(final String javaClassName) {
+                    return patternMatching(javaClassName, bfClass.pattern, patternType);
+                }
+
+                @Override
+                public boolean isExplicitClassName(final String javaClassName) {
+                    // onClass(Class)在REGEX模式下会被quote
+                    return javaClassName.equals(bfClass.pattern)
+                            || quote(javaClassName).equals(bfClass.pattern);
+                }
+
+                @Override
+                public boolean doMethodNameFilter(final String javaMethodName) {
+                    for (final BuildingForBehavior bfBehavior : bfClass.bfBehaviors) {
+                        if (patternMatching(javaMethodName, bfBehavior.pattern, patternType)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
                 @Override
                 public boolean doClassFilter(final int access,
                                              final String javaClassName,
@@ -495,12 +743,34 @@ public class EventWatchBuilder {
 
             filters.add(makeExtFilter(filter, bfClass));
         }
-        return new EventWatchCondition() {
-            @Override
-            public Filter[] getOrFilterArray() {
-                return filters.toArray(new Filter[0]);
+        if (null != callSitePatterns) {
+            return new CallSiteEventWatchCondition(filters.toArray(new Filter[0]), callSitePatterns, isProcessTopOnly);
+        }
+        return new BuildingEventWatchCondition(filters.toArray(new Filter[0]), isProcessTopOnly);
+    }
+
+    // 根据构建条件推导过滤器需要读取的类型信息，没有设置的匹配组不需要解析对应的家族信息
+    // 注意：父类名从来不参与EventWatchBuilder的匹配
+    private static int toCapabilities(final BuildingForClass bfClass) {
+        int capabilities = CapabilityFilter.CAP_NONE;
+        if (!bfClass.hasInterfaceTypes.groups.isEmpty()) {
+            capabilities |= CapabilityFilter.CAP_CLASS_INTERFACE_TYPES;
+        }
+        if (!bfClass.hasAnnotationTypes.groups.isEmpty()) {
+            capabilities |= CapabilityFilter.CAP_CLASS_ANNOTATION_TYPES;
+        }
+        for (final BuildingForBehavior bfBehavior : bfClass.bfBehaviors) {
+            if (!bfBehavior.withParameterTypes.groups.isEmpty()) {
+                capabilities |= CapabilityFilter.CAP_BEHAVIOR_PARAMETER_TYPES;
             }
-        };
+            if (!bfBehavior.hasExceptionTypes.groups.isEmpty()) {
+                capabilities |= CapabilityFilter.CAP_BEHAVIOR_THROWS_TYPES;
+            }
+            if (!bfBehavior.hasAnnotationTypes.groups.isEmpty()) {
+                capabilities |= CapabilityFilter.CAP_BEHAVIOR_ANNOTATION_TYPES;
+            }
+        }
+        return capabilities;
     }
 
     private Filter makeExtFilter(final Filter filter,
@@ -512,23 +782,22 @@ public class EventWatchBuilder {
         );
     }
 
-    private ProgressGroup toProgressGroup(final List<Progress> progresses) {
-        if (progresses.isEmpty()) {
-            return null;
-        }
-        return new ProgressGroup(progresses);
+    private EventWatcher build(final EventListener listener,
+                               final Progress progress,
+                               final Event.Type... eventTypes) {
+        return build(listener, progress, null, false, eventTypes);
     }
 
     private EventWatcher build(final EventListener listener,
                                final Progress progress,
+                               final List<CallSitePattern> callSitePatterns,
+                               final boolean isProcessTopOnly,
                                final Event.Type... eventTypes) {
 
-        final int watchId = moduleEventWatcher.watch(
-                toEventWatchCondition(),
-                listener,
-                progress,
-                eventTypes
-        );
+        final EventWatchCondition condition = toEventWatchCondition(callSitePatterns, isProcessTopOnly);
+        final int watchId = null == watchBatch
+                ? moduleEventWatcher.watch(condition, listener, progress, eventTypes)
+                : watchBatch.watch(condition, listener, progress, eventTypes);
 
         return new EventWatcher() {
 
@@ -549,53 +818,12 @@ public class EventWatchBuilder {
 
             @Override
             public void onUnWatched() {
-                moduleEventWatcher.delete(watchId, toProgressGroup(progresses));
+                moduleEventWatcher.delete(watchId, ProgressGroup.of(progresses));
             }
 
         };
     }
 
-    /**
-     * 观察进度组
-     */
-    private static class ProgressGroup implements Progress {
-
-        private final List<Progress> progresses;
-
-        ProgressGroup(List<Progress> progresses) {
-            this.progresses = progresses;
-        }
-
-        @Override
-        public void begin(int total) {
-            for (final Progress progress : progresses) {
-                progress.begin(total);
-            }
-        }
-
-        @Override
-        public void progressOnSuccess(Class<?> clazz, int index) {
-            for (final Progress progress : progresses) {
-                progress.progressOnSuccess(clazz, index);
-            }
-        }
-
-        @Override
-        public void progressOnFailed(Class<?> clazz, int index, Throwable cause) {
-            for (final Progress progress : progresses) {
-                progress.progressOnFailed(clazz, index, cause);
-            }
-        }
-
-        @Override
-        public void finish(int cCnt, int mCnt) {
-            for (final Progress progress : progresses) {
-                progress.finish(cCnt, mCnt);
-            }
-        }
-
-    }
-
     /**
      * 模式匹配组列表
      */
@@ -711,4 +939,38 @@ public class EventWatchBuilder {
 
     }
 
+    /**
+     * 不支持批量的观察者所使用的批量，登记时就立即观察
+     */
+    private static class ImmediateWatchBatch implements WatchBatch {
+
+        private final ModuleEventWatcher moduleEventWatcher;
+
+        ImmediateWatchBatch(final ModuleEventWatcher moduleEventWatcher) {
+            this.moduleEventWatcher = moduleEventWatcher;
+        }
+
+        @Override
+        public int watch(final Filter filter,
+                         final EventListener listener,
+                         final Progress progress,
+                         final Event.Type... eventType) {
+            return moduleEventWatcher.watch(filter, listener, progress, eventType);
+        }
+
+        @Override
+        public int watch(final EventWatchCondition condition,
+                         final EventListener listener,
+                         final Progress progress,
+                         final Event.Type... eventType) {
+            return moduleEventWatcher.watch(condition, listener, progress, eventType);
+        }
+
+        @Override
+        public void commit(final Progress progress) {
+            // 观察已经在登记时生效
+        }
+
+    }
+
 }
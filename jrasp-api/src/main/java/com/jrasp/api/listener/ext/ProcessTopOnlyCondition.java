@@ -0,0 +1,20 @@
+package com.jrasp.api.listener.ext;
+
+/**
+ * 只观察调用过程最外层的观察条件
+ * <p>
+ * 观察条件({@link EventWatchCondition})同时实现了本接口且返回TRUE时，
+ * 同一个观察在一次调用过程中嵌套触发的调用(如JDBC驱动内部的层层调用)在压栈之后立即返回，
+ * 不构造事件、不调用监听器，只有最外层的调用会产生事件
+ * </p>
+ */
+public interface ProcessTopOnlyCondition {
+
+    /**
+     * 是否只观察调用过程的最外层
+     *
+     * @return TRUE:只观察最外层;FALSE:观察每一层
+     */
+    boolean isProcessTopOnly();
+
+}
@@ -0,0 +1,64 @@
+package com.jrasp.api.model;
+
+import com.alibaba.fastjson.annotation.JSONField;
+
+/**
+ * 方法增强前后的字节码长度
+ */
+public class WovenMethodSizeInfo {
+
+    @JSONField(ordinal = 1)
+    private String method;
+
+    @JSONField(ordinal = 2)
+    private int srcCodeSize;
+
+    @JSONField(ordinal = 3)
+    private int wovenCodeSize;
+
+    // 增强前可以被JIT内联，增强后超过了内联阈值
+    @JSONField(ordinal = 4)
+    private boolean isOverInlineSize;
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public int getSrcCodeSize() {
+        return srcCodeSize;
+    }
+
+    public void setSrcCodeSize(int srcCodeSize) {
+        this.srcCodeSize = srcCodeSize;
+    }
+
+    public int getWovenCodeSize() {
+        return wovenCodeSize;
+    }
+
+    public void setWovenCodeSize(int wovenCodeSize) {
+        this.wovenCodeSize = wovenCodeSize;
+    }
+
+    public boolean isOverInlineSize() {
+        return isOverInlineSize;
+    }
+
+    public void setOverInlineSize(boolean overInlineSize) {
+        isOverInlineSize = overInlineSize;
+    }
+
+    public WovenMethodSizeInfo() {
+    }
+
+    public WovenMethodSizeInfo(String method, int srcCodeSize, int wovenCodeSize, boolean isOverInlineSize) {
+        this.method = method;
+        this.srcCodeSize = srcCodeSize;
+        this.wovenCodeSize = wovenCodeSize;
+        this.isOverInlineSize = isOverInlineSize;
+    }
+}
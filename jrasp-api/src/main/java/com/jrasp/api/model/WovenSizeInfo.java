@@ -0,0 +1,78 @@
+package com.jrasp.api.model;
+
+import com.alibaba.fastjson.annotation.JSONField;
+
+import java.util.List;
+
+/**
+ * 类在一次观察下增强前后的字节码大小
+ */
+public class WovenSizeInfo {
+
+    @JSONField(ordinal = 1)
+    private String javaClassName;
+
+    @JSONField(ordinal = 2)
+    private int listenerId;
+
+    @JSONField(ordinal = 3)
+    private int srcSize;
+
+    @JSONField(ordinal = 4)
+    private int wovenSize;
+
+    // 字节码长度有变化的方法，增强时新增的方法增强前长度为0
+    @JSONField(ordinal = 5)
+    private List<WovenMethodSizeInfo> methods;
+
+    public String getJavaClassName() {
+        return javaClassName;
+    }
+
+    public void setJavaClassName(String javaClassName) {
+        this.javaClassName = javaClassName;
+    }
+
+    public int getListenerId() {
+        return listenerId;
+    }
+
+    public void setListenerId(int listenerId) {
+        this.listenerId = listenerId;
+    }
+
+    public int getSrcSize() {
+        return srcSize;
+    }
+
+    public void setSrcSize(int srcSize) {
+        this.srcSize = srcSize;
+    }
+
+    public int getWovenSize() {
+        return wovenSize;
+    }
+
+    public void setWovenSize(int wovenSize) {
+        this.wovenSize = wovenSize;
+    }
+
+    public List<WovenMethodSizeInfo> getMethods() {
+        return methods;
+    }
+
+    public void setMethods(List<WovenMethodSizeInfo> methods) {
+        this.methods = methods;
+    }
+
+    public WovenSizeInfo() {
+    }
+
+    public WovenSizeInfo(String javaClassName, int listenerId, int srcSize, int wovenSize, List<WovenMethodSizeInfo> methods) {
+        this.javaClassName = javaClassName;
+        this.listenerId = listenerId;
+        this.srcSize = srcSize;
+        this.wovenSize = wovenSize;
+        this.methods = methods;
+    }
+}
@@ -0,0 +1,65 @@
+package com.jrasp.api.resource;
+
+import com.jrasp.api.event.Event;
+import com.jrasp.api.filter.Filter;
+import com.jrasp.api.listener.EventListener;
+import com.jrasp.api.listener.ext.EventWatchCondition;
+
+/**
+ * 支持批量观察的模块事件观察者
+ * <p>
+ * 独立于{@link ModuleEventWatcher}定义，已有的{@link ModuleEventWatcher}实现不需要做任何修改；
+ * 使用方通过instanceof判断观察者是否支持批量
+ * </p>
+ */
+public interface BatchableModuleEventWatcher extends ModuleEventWatcher {
+
+    /**
+     * 开启一次批量观察
+     * <p>
+     * 批量中的观察在{@link WatchBatch#commit(Progress)}时统一生效：
+     * 只做一次已加载类的合并匹配，每个命中的类只会被重新形变一次
+     * </p>
+     *
+     * @return 批量观察
+     */
+    WatchBatch batch();
+
+    /**
+     * 批量观察
+     */
+    interface WatchBatch {
+
+        /**
+         * 登记一个观察，在提交之前不会生效
+         *
+         * @param filter    观察条件
+         * @param listener  事件监听器
+         * @param progress  观察进度，可为null，将收到整个批量的形变进度
+         * @param eventType 观察事件类型
+         * @return 观察ID
+         */
+        int watch(Filter filter, EventListener listener, Progress progress, Event.Type... eventType);
+
+        /**
+         * 登记一个观察，在提交之前不会生效
+         *
+         * @param condition 观察条件
+         * @param listener  事件监听器
+         * @param progress  观察进度，可为null，将收到整个批量的形变进度
+         * @param eventType 观察事件类型
+         * @return 观察ID
+         */
+        int watch(EventWatchCondition condition, EventListener listener, Progress progress, Event.Type... eventType);
+
+        /**
+         * 提交批量中登记的所有观察，一个批量只能提交一次
+         *
+         * @param progress 批量的形变进度，可为null
+         */
+        void commit(Progress progress);
+
+    }
+
+
+}
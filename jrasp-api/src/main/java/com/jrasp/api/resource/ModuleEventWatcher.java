@@ -5,6 +5,8 @@ import com.jrasp.api.filter.Filter;
 import com.jrasp.api.listener.EventListener;
 import com.jrasp.api.listener.ext.EventWatchCondition;
 
+import java.util.List;
+
 
 public interface ModuleEventWatcher {
 
@@ -52,4 +54,61 @@ public interface ModuleEventWatcher {
 
     }
 
+    /**
+     * 观察进度组，把进度依次通知给组内的每一个进度
+     */
+    class ProgressGroup implements Progress {
+
+        private final List<Progress> progresses;
+
+        private ProgressGroup(final List<Progress> progresses) {
+            this.progresses = progresses;
+        }
+
+        /**
+         * 合并多个进度
+         *
+         * @param progresses 进度列表
+         * @return 没有进度时返回null，只有一个进度时返回它本身
+         */
+        public static Progress of(final List<Progress> progresses) {
+            if (null == progresses || progresses.isEmpty()) {
+                return null;
+            }
+            if (progresses.size() == 1) {
+                return progresses.get(0);
+            }
+            return new ProgressGroup(progresses);
+        }
+
+        @Override
+        public void begin(final int total) {
+            for (final Progress progress : progresses) {
+                progress.begin(total);
+            }
+        }
+
+        @Override
+        public void progressOnSuccess(final Class<?> clazz, final int index) {
+            for (final Progress progress : progresses) {
+                progress.progressOnSuccess(clazz, index);
+            }
+        }
+
+        @Override
+        public void progressOnFailed(final Class<?> clazz, final int index, final Throwable cause) {
+            for (final Progress progress : progresses) {
+                progress.progressOnFailed(clazz, index, cause);
+            }
+        }
+
+        @Override
+        public void finish(final int cCnt, final int mCnt) {
+            for (final Progress progress : progresses) {
+                progress.finish(cCnt, mCnt);
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,48 @@
+package com.jrasp.api.resource;
+
+/**
+ * 重新形变调度状态
+ */
+public interface RetransformMonitor {
+
+    /**
+     * @return 排队等待形变的类数量
+     */
+    int getWaitingCount();
+
+    /**
+     * @return 累计形变成功的类数量
+     */
+    long getReTransformedCount();
+
+    /**
+     * @return 累计形变失败的类数量
+     */
+    long getFailedCount();
+
+    /**
+     * @return 累计因预算不足而等待的时间(ms)
+     */
+    long getThrottledMillis();
+
+    /**
+     * @return 最近一次形变调用的耗时(ms)
+     */
+    long getLastPauseMillis();
+
+    /**
+     * @return 预算周期(ms)
+     */
+    long getIntervalMillis();
+
+    /**
+     * @return 每个预算周期内允许的形变耗时(ms)，0表示不限制
+     */
+    long getMaxPauseMillisPerInterval();
+
+    /**
+     * @return 每个预算周期内允许形变的类数量，0表示不限制
+     */
+    int getMaxClassesPerInterval();
+
+}
@@ -0,0 +1,30 @@
+package com.jrasp.api.resource;
+
+import com.jrasp.api.model.WovenSizeInfo;
+
+import java.util.List;
+
+/**
+ * 增强前后字节码大小报告
+ */
+public interface WovenSizeMonitor {
+
+    /**
+     * @return 有报告的类数量，同一个类被多个观察增强时分别计数
+     */
+    int getClassCount();
+
+    /**
+     * @return 增强后超过JIT内联阈值的方法数量
+     */
+    int getOverInlineSizeMethodCount();
+
+    /**
+     * 列出增强前后的字节码大小
+     *
+     * @param limit 最多列出的数量
+     * @return 按增强后增长的字节数降序排列
+     */
+    List<WovenSizeInfo> list(int limit);
+
+}
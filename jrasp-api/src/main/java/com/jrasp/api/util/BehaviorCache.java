@@ -0,0 +1,271 @@
+package com.jrasp.api.util;
+
+import com.jrasp.api.listener.ext.Behavior;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 行为缓存
+ * <p>
+ * 按ClassLoader弱引用分区，分区内以类名为键。每个类第一次查找时一次性建立[方法名:[方法描述:行为]]的索引，
+ * 之后的查找都是哈希查找；索引本身只有字符串，被分区强引用，不会随GC丢失，也不会拖住ClassLoader。
+ * 行为中的Method会反过来引用类，所以索引只用软引用持有行为，内存紧张时被清除后按需单独重新解析
+ * </p>
+ * <p>
+ * 命中时不加锁；只有未命中需要建立索引时才加分段锁，同一个类的索引只建立一次。
+ * 命中、未命中和锁竞争次数都记在各自分段上，避免统计本身成为竞争点
+ * </p>
+ */
+public class BehaviorCache {
+
+    public static final BehaviorCache instance = new BehaviorCache();
+
+    // 分段数，必须是2的幂
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    // BootstrapClassLoader所加载类的分区
+    private final ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> bootstrapIndexes
+            = new ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>>();
+
+    // 其他ClassLoader所加载类的分区
+    private final ConcurrentWeakIdentityMap<ClassLoader, ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>>> loaderIndexes
+            = new ConcurrentWeakIdentityMap<ClassLoader, ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>>>();
+
+    private BehaviorCache() {
+        for (int index = 0; index < SEGMENT_COUNT; index++) {
+            segments[index] = new Segment();
+        }
+    }
+
+    private Segment segmentFor(final Class<?> clazz) {
+        final int hash = System.identityHashCode(clazz);
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    private ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> getIndexes(final ClassLoader loader) {
+        if (null == loader) {
+            return bootstrapIndexes;
+        }
+        final ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> indexes = loaderIndexes.get(loader);
+        if (null != indexes) {
+            return indexes;
+        }
+        final ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> newIndexes
+                = new ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>>();
+        final ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> existIndexes
+                = loaderIndexes.putIfAbsent(loader, newIndexes);
+        return null == existIndexes ? newIndexes : existIndexes;
+    }
+
+    /**
+     * 查找类中声明的行为
+     *
+     * @param clazz          类
+     * @param javaMethodName 方法名，构造函数为{@code <init>}
+     * @param javaMethodDesc 方法描述
+     * @return 行为，找不到时返回null
+     */
+    public Behavior getBehavior(final Class<?> clazz,
+                                final String javaMethodName,
+                                final String javaMethodDesc) {
+        final Map<String, Map<String, BehaviorEntry>> index
+                = segmentFor(clazz).get(getIndexes(clazz.getClassLoader()), clazz);
+        final Map<String, BehaviorEntry> entries = index.get(javaMethodName);
+        final BehaviorEntry entry = null == entries
+                ? null
+                : entries.get(javaMethodDesc);
+        return null == entry
+                ? null
+                : entry.get(clazz);
+    }
+
+    private static void put(final Map<String, Map<String, BehaviorEntry>> index,
+                            final String javaMethodName,
+                            final String javaMethodDesc,
+                            final Behavior behavior) {
+        Map<String, BehaviorEntry> entries = index.get(javaMethodName);
+        if (null == entries) {
+            index.put(javaMethodName, entries = new HashMap<String, BehaviorEntry>());
+        }
+        entries.put(javaMethodDesc, new BehaviorEntry(javaMethodName, javaMethodDesc, behavior));
+    }
+
+    private static Map<String, Map<String, BehaviorEntry>> buildIndex(final Class<?> clazz) {
+        final Map<String, Map<String, BehaviorEntry>> index = new HashMap<String, Map<String, BehaviorEntry>>();
+        for (final Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            put(index, "<init>", new BehaviorDescriptor(constructor).getDescriptor(), new Behavior.ConstructorImpl(constructor));
+        }
+        for (final Method method : clazz.getDeclaredMethods()) {
+            put(index, method.getName(), new BehaviorDescriptor(method).getDescriptor(), new Behavior.MethodImpl(method));
+        }
+        return index;
+    }
+
+    // 软引用被清除后重新解析单个行为，只计算同名方法的描述
+    private static Behavior resolve(final Class<?> clazz,
+                                    final String javaMethodName,
+                                    final String javaMethodDesc) {
+        if ("<init>".equals(javaMethodName)) {
+            for (final Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+                if (javaMethodDesc.equals(new BehaviorDescriptor(constructor).getDescriptor())) {
+                    return new Behavior.ConstructorImpl(constructor);
+                }
+            }
+            return null;
+        }
+        for (final Method method : clazz.getDeclaredMethods()) {
+            if (javaMethodName.equals(method.getName())
+                    && javaMethodDesc.equals(new BehaviorDescriptor(method).getDescriptor())) {
+                return new Behavior.MethodImpl(method);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取命中次数
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.hitCount;
+        }
+        return count;
+    }
+
+    /**
+     * 获取未命中(需要建立索引)次数
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.missCount;
+        }
+        return count;
+    }
+
+    /**
+     * 获取分段锁竞争次数
+     *
+     * @return 锁竞争次数
+     */
+    public long getContendedCount() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.contendedCount;
+        }
+        return count;
+    }
+
+    /**
+     * 获取已建立索引的类数量
+     *
+     * @return 类数量
+     */
+    public int getClassCount() {
+        int count = bootstrapIndexes.size();
+        for (final ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> indexes : loaderIndexes.values()) {
+            count += indexes.size();
+        }
+        return count;
+    }
+
+    /**
+     * 索引中的行为条目
+     * <p>
+     * 条目建立后不再变化，只有软引用会在被清除后重新指向新解析出的行为
+     * </p>
+     */
+    private static class BehaviorEntry {
+
+        private final String javaMethodName;
+        private final String javaMethodDesc;
+        private volatile SoftReference<Behavior> behaviorRef;
+
+        BehaviorEntry(final String javaMethodName,
+                      final String javaMethodDesc,
+                      final Behavior behavior) {
+            this.javaMethodName = javaMethodName;
+            this.javaMethodDesc = javaMethodDesc;
+            this.behaviorRef = new SoftReference<Behavior>(behavior);
+        }
+
+        Behavior get(final Class<?> clazz) {
+            final Behavior behavior = behaviorRef.get();
+            if (null != behavior) {
+                return behavior;
+            }
+            final Behavior resolved = resolve(clazz, javaMethodName, javaMethodDesc);
+            if (null != resolved) {
+                behaviorRef = new SoftReference<Behavior>(resolved);
+            }
+            return resolved;
+        }
+
+    }
+
+    /**
+     * 缓存分段
+     * <p>
+     * 命中次数不加锁累加，是近似值；未命中和锁竞争次数只在持有分段锁时修改
+     * </p>
+     */
+    private static class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private volatile long hitCount;
+        private volatile long missCount;
+        private volatile long contendedCount;
+
+        private void lock() {
+            if (!lock.tryLock()) {
+                lock.lock();
+                contendedCount++;
+            }
+        }
+
+        Map<String, Map<String, BehaviorEntry>> get(final ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> indexes,
+                                                    final Class<?> clazz) {
+            final Map<String, Map<String, BehaviorEntry>> index = indexes.get(clazz.getName());
+            if (null != index) {
+                hitCount++;
+                return index;
+            }
+            return getOrBuild(indexes, clazz);
+        }
+
+        // 未命中时加锁建立索引，避免并发对同一个类重复反射
+        private Map<String, Map<String, BehaviorEntry>> getOrBuild(final ConcurrentHashMap<String, Map<String, Map<String, BehaviorEntry>>> indexes,
+                                                                   final Class<?> clazz) {
+            lock();
+            try {
+                final Map<String, Map<String, BehaviorEntry>> exist = indexes.get(clazz.getName());
+                if (null != exist) {
+                    hitCount++;
+                    return exist;
+                }
+                missCount++;
+                final Map<String, Map<String, BehaviorEntry>> index = buildIndex(clazz);
+                indexes.put(clazz.getName(), index);
+                return index;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.jrasp.api.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 并发的弱引用身份映射表
+ * <p>
+ * 键以身份(而非equals)比较，并以弱引用持有，键被回收后映射随之失效；
+ * 读路径不加锁，查询键每个线程复用一个，不分配对象；
+ * 失效映射的清理只在写入时顺带进行，且同一时刻只有一个线程在清理
+ * </p>
+ * <p>
+ * 值被映射表强引用，值不能反过来强引用键，否则键永远不会被回收
+ * </p>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class ConcurrentWeakIdentityMap<K, V> {
+
+    private final ReferenceQueue<K> rQueue = new ReferenceQueue<K>();
+
+    // 键为IdentityWeakReference，查询时用IdentityLookupKey
+    private final ConcurrentHashMap<Object, V> mapping = new ConcurrentHashMap<Object, V>();
+
+    // 是否有线程正在清理失效映射
+    private final AtomicBoolean isExpunging = new AtomicBoolean(false);
+
+    // 每个线程复用的查询键，查询完成后立即清空，不会延长键的生命周期
+    private final ThreadLocal<IdentityLookupKey> lookupKeyRef = new ThreadLocal<IdentityLookupKey>() {
+        @Override
+        protected IdentityLookupKey initialValue() {
+            return new IdentityLookupKey();
+        }
+    };
+
+    /**
+     * 查询映射，不加锁
+     *
+     * @param key 键
+     * @return 值，没有映射时返回null
+     */
+    public V get(final K key) {
+        final IdentityLookupKey lookupKey = lookupKeyRef.get();
+        lookupKey.referent = key;
+        try {
+            return mapping.get(lookupKey);
+        } finally {
+            lookupKey.referent = null;
+        }
+    }
+
+    /**
+     * 添加映射，已有映射时以已有的为准
+     *
+     * @param key   键
+     * @param value 值
+     * @return 已有的值，没有时返回null
+     */
+    public V putIfAbsent(final K key, final V value) {
+        expunge();
+        return mapping.putIfAbsent(new IdentityWeakReference<K>(key, rQueue), value);
+    }
+
+    /**
+     * 替换映射
+     *
+     * @param key      键
+     * @param oldValue 期望的旧值
+     * @param newValue 新值
+     * @return TRUE:替换成功
+     */
+    public boolean replace(final K key, final V oldValue, final V newValue) {
+        final IdentityLookupKey lookupKey = lookupKeyRef.get();
+        lookupKey.referent = key;
+        try {
+            return mapping.replace(lookupKey, oldValue, newValue);
+        } finally {
+            lookupKey.referent = null;
+        }
+    }
+
+    /**
+     * 获取所有存活映射的值
+     *
+     * @return 值的快照
+     */
+    public List<V> values() {
+        expunge();
+        return new ArrayList<V>(mapping.values());
+    }
+
+    /**
+     * 存活映射数量(近似值，可能包含尚未清理的失效映射)
+     *
+     * @return 映射数量
+     */
+    public int size() {
+        expunge();
+        return mapping.size();
+    }
+
+    public void clear() {
+        mapping.clear();
+        expunge();
+    }
+
+    /**
+     * 清理失效的映射
+     */
+    private void expunge() {
+        if (!isExpunging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Object x; (x = rQueue.poll()) != null; ) {
+                mapping.remove(x);
+            }
+        } finally {
+            isExpunging.set(false);
+        }
+    }
+
+    // 查询用的临时强引用键，以对象身份(而非equals)与映射表中的弱引用比较
+    private static class IdentityLookupKey {
+
+        private Object referent;
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return null != referent
+                    && obj instanceof IdentityWeakReference
+                    && referent == ((IdentityWeakReference<?>) obj).get();
+        }
+
+    }
+
+    // 弱引用键
+    private static class IdentityWeakReference<K> extends WeakReference<K> {
+
+        // 对象被回收后仍需保持不变
+        private final int hashCode;
+
+        private IdentityWeakReference(final K referent,
+                                      final ReferenceQueue<K> rQueue) {
+            super(referent, rQueue);
+            this.hashCode = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        // 被回收的引用只与自身相等
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof IdentityLookupKey) {
+                return null != ((IdentityLookupKey) obj).referent
+                        && ((IdentityLookupKey) obj).referent == get();
+            }
+            final Object referent = get();
+            return null != referent
+                    && obj instanceof IdentityWeakReference
+                    && referent == ((IdentityWeakReference<?>) obj).get();
+        }
+
+    }
+
+}
@@ -43,6 +43,35 @@ public class CoreConfigure {
     // 是否开启鉴权
     private static final String KEY_ENBALE_AUTH = "enableAuth";
 
+    // 已加载类扫描的并行度，默认为CPU核数的一半且不超过4，避免挤占业务线程
+    private static final String KEY_SCAN_PARALLELISM = "scanParallelism";
+    private static final int MAX_DEFAULT_SCAN_PARALLELISM = 4;
+
+    // 每次retransformClasses调用形变的类数量，批量越大安全点次数越少，单次停顿越长
+    private static final String KEY_RETRANSFORM_BATCH_SIZE = "retransformBatchSize";
+    private static final int DEFAULT_RETRANSFORM_BATCH_SIZE = 64;
+
+    // 重新形变预算：每个周期内允许的形变耗时和类数量，0表示不限制，默认不限制
+    // 只限制观察产生的形变，超出预算的部分由后台线程在下一个周期继续
+    private static final String KEY_RETRANSFORM_INTERVAL_MILLIS = "retransformIntervalMillis";
+    private static final long DEFAULT_RETRANSFORM_INTERVAL_MILLIS = 1000L;
+    private static final String KEY_RETRANSFORM_MAX_PAUSE_MILLIS = "retransformMaxPauseMillis";
+    private static final long DEFAULT_RETRANSFORM_MAX_PAUSE_MILLIS = 0L;
+    private static final String KEY_RETRANSFORM_MAX_CLASSES = "retransformMaxClasses";
+    private static final int DEFAULT_RETRANSFORM_MAX_CLASSES = 0;
+
+    // 增强后字节码的磁盘缓存上限(MB)，0表示不启用
+    private static final String KEY_WOVEN_CLASS_CACHE_MAX_MB = "wovenClassCacheMaxMB";
+    private static final long DEFAULT_WOVEN_CLASS_CACHE_MAX_MB = 0L;
+
+    // 模块冻结超过该时间后撤销增强，恢复原始字节码，0表示不撤销
+    private static final String KEY_FROZEN_DEWEAVE_MILLIS = "frozenDeweaveMillis";
+    private static final long DEFAULT_FROZEN_DEWEAVE_MILLIS = 0L;
+
+    // 是否把织入的钩子代码移到类上的桩方法中，减小被增强方法的字节码长度
+    // 桩方法需要JVM允许重新形变时新增方法，JDK13+的HotSpot要加-XX:+AllowRedefinitionToAddDeleteMethods，否则退回内联织入
+    private static final String KEY_WEAVE_OUT_OF_LINE = "weaveOutOfLine";
+
     //------------------------------------------------常量参数-----------------------------------------------------------
     private static final String SYSTEM_MODULE_FILE_NAME = "system-module";
 
@@ -177,6 +206,64 @@ public class CoreConfigure {
         }
     }
 
+    // 获取已加载类扫描的并行度
+    public int getScanParallelism() {
+        final int defaultScanParallelism = Math.max(1, Math.min(
+                Runtime.getRuntime().availableProcessors() / 2,
+                MAX_DEFAULT_SCAN_PARALLELISM
+        ));
+        final int scanParallelism = NumberUtils.toInt(featureMap.get(KEY_SCAN_PARALLELISM), defaultScanParallelism);
+        return scanParallelism > 0
+                ? scanParallelism
+                : defaultScanParallelism;
+    }
+
+    // 获取每批重新形变的类数量
+    public int getRetransformBatchSize() {
+        final int retransformBatchSize = NumberUtils.toInt(featureMap.get(KEY_RETRANSFORM_BATCH_SIZE), DEFAULT_RETRANSFORM_BATCH_SIZE);
+        return retransformBatchSize > 0
+                ? retransformBatchSize
+                : DEFAULT_RETRANSFORM_BATCH_SIZE;
+    }
+
+    // 获取重新形变预算周期
+    public long getRetransformIntervalMillis() {
+        final long retransformIntervalMillis = NumberUtils.toLong(featureMap.get(KEY_RETRANSFORM_INTERVAL_MILLIS), DEFAULT_RETRANSFORM_INTERVAL_MILLIS);
+        return retransformIntervalMillis > 0
+                ? retransformIntervalMillis
+                : DEFAULT_RETRANSFORM_INTERVAL_MILLIS;
+    }
+
+    // 获取每个预算周期内允许的形变耗时
+    public long getRetransformMaxPauseMillis() {
+        return Math.max(0L, NumberUtils.toLong(featureMap.get(KEY_RETRANSFORM_MAX_PAUSE_MILLIS), DEFAULT_RETRANSFORM_MAX_PAUSE_MILLIS));
+    }
+
+    // 获取每个预算周期内允许形变的类数量
+    public int getRetransformMaxClasses() {
+        return Math.max(0, NumberUtils.toInt(featureMap.get(KEY_RETRANSFORM_MAX_CLASSES), DEFAULT_RETRANSFORM_MAX_CLASSES));
+    }
+
+    // 获取增强后字节码的磁盘缓存上限(字节)
+    public long getWovenClassCacheMaxBytes() {
+        return Math.max(0L, NumberUtils.toLong(featureMap.get(KEY_WOVEN_CLASS_CACHE_MAX_MB), DEFAULT_WOVEN_CLASS_CACHE_MAX_MB)) << 20;
+    }
+
+    // 获取模块冻结后撤销增强的等待时间
+    public long getFrozenDeweaveMillis() {
+        return Math.max(0L, NumberUtils.toLong(featureMap.get(KEY_FROZEN_DEWEAVE_MILLIS), DEFAULT_FROZEN_DEWEAVE_MILLIS));
+    }
+
+    // 是否把织入的钩子代码移到桩方法中
+    public boolean isWeaveOutOfLine() {
+        return BooleanUtils.toBoolean(featureMap.get(KEY_WEAVE_OUT_OF_LINE));
+    }
+
+    // 获取增强后字节码的磁盘缓存路径，不随进程退出删除
+    public String getWovenClassCachePath() {
+        return getRaspHome() + File.separatorChar + "cache" + File.separatorChar + "woven-class";
+    }
+
     // 获取技术支持URL
     public String getSupportURL() {
         String keySupportUrl = featureMap.get(KEY_SUPPORT_URL);
@@ -43,6 +43,12 @@ public class CoreModule {
     // 是否已被加载
     private boolean isLoaded;
 
+    // 模块最近一次被冻结的时间
+    private volatile long frozenTimeMillis;
+
+    // 模块的增强是否已被撤销
+    private boolean isDewoven;
+
     /**
      * 模块业务对象
      *
@@ -77,10 +83,42 @@ public class CoreModule {
      * @return this
      */
     public CoreModule markActivated(boolean isActivated) {
+        if (this.isActivated && !isActivated) {
+            this.frozenTimeMillis = System.currentTimeMillis();
+        }
         this.isActivated = isActivated;
         return this;
     }
 
+    /**
+     * 获取模块最近一次被冻结的时间
+     *
+     * @return 冻结时间
+     */
+    public long getFrozenTimeMillis() {
+        return frozenTimeMillis;
+    }
+
+    /**
+     * 判断模块的增强是否已被撤销
+     *
+     * @return TRUE:已撤销;FALSE:未撤销
+     */
+    public boolean isDewoven() {
+        return isDewoven;
+    }
+
+    /**
+     * 标记模块的增强撤销状态
+     *
+     * @param isDewoven 增强撤销状态
+     * @return this
+     */
+    public CoreModule markDewoven(boolean isDewoven) {
+        this.isDewoven = isDewoven;
+        return this;
+    }
+
     /**
      * 判断模块是否已经被加载
      *
@@ -1,5 +1,6 @@
 package com.jrasp.core;
 
+import com.jrasp.core.enhance.WovenClassCache;
 import com.jrasp.core.enhance.weaver.EventListenerHandler;
 import com.jrasp.core.manager.CoreModuleManager;
 import com.jrasp.core.manager.impl.DefaultCoreLoadedClassDataSource;
@@ -7,6 +8,7 @@ import com.jrasp.core.manager.impl.DefaultCoreModuleManager;
 import com.jrasp.core.manager.impl.DefaultProviderManager;
 import com.jrasp.core.util.RaspProtector;
 import com.jrasp.core.util.SpyUtils;
+import com.jrasp.core.util.matcher.structure.TypeHierarchyIndex;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
@@ -27,6 +29,7 @@ public class JvmRasp {
 
     private final CoreConfigure cfg;
     private final CoreModuleManager coreModuleManager;
+    private final DefaultCoreLoadedClassDataSource classDataSource;
 
     private Thread clearThread = new Thread(new Runnable() {
         @Override
@@ -39,10 +42,14 @@ public class JvmRasp {
                    final Instrumentation inst) {
         EventListenerHandler.getSingleton();
         this.cfg = cfg;
+        // 类型继承索引需要在模块加载(产生观察)之前建立
+        TypeHierarchyIndex.instance.init(inst);
+        WovenClassCache.instance.init(cfg.getWovenClassCachePath(), cfg.getWovenClassCacheMaxBytes());
+        this.classDataSource = new DefaultCoreLoadedClassDataSource(inst, cfg.isEnableUnsafe(), cfg.getScanParallelism());
         this.coreModuleManager = RaspProtector.instance.protectProxy(CoreModuleManager.class, new DefaultCoreModuleManager(
                 cfg,
                 inst,
-                new DefaultCoreLoadedClassDataSource(inst, cfg.isEnableUnsafe()),
+                classDataSource,
                 new DefaultProviderManager(cfg)
         ));
 
@@ -124,9 +131,18 @@ public class JvmRasp {
         // 卸载所有的模块
         coreModuleManager.unloadAll();
 
+        // 关闭已加载类的扫描线程
+        classDataSource.destroy();
+
         // 清理Spy
         SpyUtils.clean(cfg.getNamespace());
 
+        // 清理类型继承索引
+        TypeHierarchyIndex.instance.destroy();
+
+        // 停用增强字节码缓存，磁盘上的缓存留给下次挂载
+        WovenClassCache.instance.destroy();
+
         // 清除目录
         cleanPidRunDir();
 
@@ -1,22 +1,26 @@
 package com.jrasp.core.enhance;
 
 import com.jrasp.api.event.Event;
+import com.jrasp.api.filter.CallSiteFilter;
 import com.jrasp.api.log.Log;
 import com.jrasp.core.enhance.weaver.EventListenerHandler;
 import com.jrasp.core.enhance.weaver.asm.EventWeaver;
+import com.jrasp.core.enhance.weaver.asm.LineNumberRangeScanner;
+import com.jrasp.core.enhance.weaver.asm.ReturnSiteScanner;
 import com.jrasp.core.log.LogFactory;
 import com.jrasp.core.manager.NativeMethodEnhanceAware;
 import com.jrasp.core.util.AsmUtils;
-import com.jrasp.core.util.ObjectIDs;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Set;
 
 import static com.jrasp.core.log.AgentLogIdConstant.*;
 import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
+import static org.apache.commons.lang3.ArrayUtils.contains;
 import static org.objectweb.asm.ClassReader.EXPAND_FRAMES;
 import static org.objectweb.asm.ClassWriter.COMPUTE_FRAMES;
 import static org.objectweb.asm.ClassWriter.COMPUTE_MAXS;
@@ -31,8 +35,27 @@ public class EventEnhancer implements Enhancer {
 
     private NativeMethodEnhanceAware nativeMethodEnhanceAware;
 
+    // 调用点过滤器，为null时增强所有调用点
+    private final CallSiteFilter callSiteFilter;
+
+    // 是否把钩子代码移到桩方法中
+    private final boolean isWeaveOutOfLine;
+
     public EventEnhancer(NativeMethodEnhanceAware nativeMethodEnhanceAware) {
+        this(nativeMethodEnhanceAware, null);
+    }
+
+    public EventEnhancer(NativeMethodEnhanceAware nativeMethodEnhanceAware,
+                         CallSiteFilter callSiteFilter) {
+        this(nativeMethodEnhanceAware, callSiteFilter, false);
+    }
+
+    public EventEnhancer(NativeMethodEnhanceAware nativeMethodEnhanceAware,
+                         CallSiteFilter callSiteFilter,
+                         boolean isWeaveOutOfLine) {
         this.nativeMethodEnhanceAware = nativeMethodEnhanceAware;
+        this.callSiteFilter = callSiteFilter;
+        this.isWeaveOutOfLine = isWeaveOutOfLine;
     }
 
     /**
@@ -53,6 +76,9 @@ public class EventEnhancer implements Enhancer {
              *
              * 通过重写 getCommonSuperClass() 方法，更正获取ClassLoader的方式，改成使用指定ClassLoader的方式进行。
              * 规避了原有代码采用Object.class.getClassLoader()的方式
+             *
+             * 共同父类优先从继承关系索引中获取，绝不能在这里用Class.forName()，否则会在类加载过程中触发类加载。
+             * ClassWriter以ClassReader构造，没有改写的方法会被ASM原样拷贝，只有改写的方法才会重新计算栈帧
              */
             @Override
             protected String getCommonSuperClass(String type1, String type2) {
@@ -103,14 +129,25 @@ public class EventEnhancer implements Enhancer {
         // 返回增强后字节码
         final ClassReader cr = new ClassReader(byteCodeArray);
         final ClassWriter cw = createClassWriter(targetClassLoader, cr);
-        final int targetClassLoaderObjectID = ObjectIDs.instance.identity(targetClassLoader);
+
+        // 行覆盖需要预先知道每个方法的行号范围，没有观察行覆盖时不需要多扫描一遍
+        final Map<String, int[]> lineNumberRanges = contains(eventTypeArray, Event.Type.LINE_COVERAGE)
+                ? LineNumberRangeScanner.scan(cr)
+                : null;
+
+        // 返回点较多的方法共享一个出口，需要预先确认每个返回点上的栈状态
+        final Set<String> sharedExitMethods = ReturnSiteScanner.scan(cr, signCodes);
+
         cr.accept(
                 new EventWeaver(nativeMethodEnhanceAware,
                         ASM7, cw, namespace, listenerId,
-                        targetClassLoaderObjectID,
                         cr.getClassName(),
                         signCodes,
-                        eventTypeArray
+                        eventTypeArray,
+                        callSiteFilter,
+                        lineNumberRanges,
+                        sharedExitMethods,
+                        isWeaveOutOfLine
                 ),
                 EXPAND_FRAMES
         );
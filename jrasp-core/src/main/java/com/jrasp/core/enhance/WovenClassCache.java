@@ -0,0 +1,482 @@
+package com.jrasp.core.enhance;
+
+import com.jrasp.api.event.Event;
+import com.jrasp.api.log.Log;
+import com.jrasp.core.log.LogFactory;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+import static com.jrasp.core.log.AgentLogIdConstant.AGENT_COMMON_LOG_ID;
+
+/**
+ * 增强后字节码的磁盘缓存
+ * <p>
+ * 重启或重新挂载后，同样的类在同样的观察下会被增强成同样的字节码。
+ * 缓存以[原始字节码摘要 + 观察指纹(命名空间、监听器ID、事件类型、匹配的行为、Agent版本、织入方式版本)]为KEY，
+ * 命中时直接返回上次增强的结果，跳过ASM的解析和织入
+ * </p>
+ * <p>
+ * 读取使用内存映射；写入交给后台线程，先写临时文件并刷盘，再原子改名并刷新目录，进程崩溃不会留下半个文件；
+ * 每个文件带CRC32校验，校验失败的文件直接删除；总大小超过上限时按LRU淘汰
+ * </p>
+ * <p>
+ * 写入队列有上限，队列满时直接放弃本次写入，类形变不会因为磁盘IO被阻塞
+ * </p>
+ * <p>
+ * 增强结果中带有运行期分配的调用点ID，观察了CALL事件的增强不能缓存
+ * </p>
+ */
+public class WovenClassCache {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    public static final WovenClassCache instance = new WovenClassCache();
+
+    private static final String FILE_SUFFIX = ".woven";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // 文件格式：魔数 | 格式版本 | 标记 | 字节码长度 | CRC32 | 字节码
+    private static final int MAGIC = 0x4A524350;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 4 + 8;
+
+    // 织入方式版本，织入的代码形式变化时递增，同一Agent版本下旧的缓存不再命中
+    private static final int WEAVE_VERSION = 2;
+
+    /**
+     * 标记：增强时改写了native方法，命中后需要重新设置native方法前缀
+     */
+    public static final int FLAG_NATIVE_METHOD_ENHANCED = 1;
+
+    // 等待写入磁盘的缓存条目上限
+    private static final int MAX_PENDING_WRITES = 256;
+
+    private volatile File cacheDir;
+    private volatile ExecutorService writeExecutor;
+
+    // 已提交但还没写完的缓存文件名，避免同一个类被重复提交写入
+    private final ConcurrentHashMap<String, Boolean> pendingFileNames = new ConcurrentHashMap<String, Boolean>();
+    private volatile String agentVersion;
+    private long maxBytes;
+
+    // 缓存文件名 : 文件大小，按访问顺序排列
+    private final LinkedHashMap<String, Long> lruFiles = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long totalBytes;
+
+    private volatile long hitCount;
+    private volatile long missCount;
+
+    private WovenClassCache() {
+
+    }
+
+    /**
+     * 启用缓存
+     *
+     * @param cacheDirPath 缓存目录
+     * @param maxBytes     缓存上限(字节)，小于等于0时不启用
+     */
+    public synchronized void init(final String cacheDirPath, final long maxBytes) {
+        if (maxBytes <= 0 || null != cacheDir) {
+            return;
+        }
+        final File dir = new File(cacheDirPath);
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            logger.warn(AGENT_COMMON_LOG_ID, "woven class cache disabled, create dir={} failed.", dir);
+            return;
+        }
+        this.maxBytes = maxBytes;
+        this.agentVersion = readAgentVersion();
+
+        // 按最后访问时间恢复LRU顺序，上次崩溃遗留的临时文件直接清理
+        final File[] files = dir.listFiles();
+        if (null != files) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File o1, File o2) {
+                    final long diff = o1.lastModified() - o2.lastModified();
+                    return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+                }
+            });
+            for (final File file : files) {
+                if (file.getName().endsWith(FILE_SUFFIX)) {
+                    lruFiles.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                } else if (file.getName().endsWith(TEMP_FILE_SUFFIX)) {
+                    file.delete();
+                }
+            }
+        }
+        this.writeExecutor = new ThreadPoolExecutor(
+                1, 1,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r, "jrasp-woven-class-cache-writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+        );
+        this.cacheDir = dir;
+        evictIfNecessary();
+        logger.info(AGENT_COMMON_LOG_ID, "woven class cache init finished, dir={};files={};bytes={};",
+                dir, lruFiles.size(), totalBytes);
+    }
+
+    /**
+     * 停用缓存，已写入磁盘的文件保留给下次使用
+     * <p>
+     * 已提交的写入继续在后台完成，不再接受新的写入
+     * </p>
+     */
+    public synchronized void destroy() {
+        cacheDir = null;
+        if (null != writeExecutor) {
+            writeExecutor.shutdown();
+            writeExecutor = null;
+        }
+        lruFiles.clear();
+        totalBytes = 0;
+    }
+
+    public boolean isEnable() {
+        return null != cacheDir;
+    }
+
+    /**
+     * 判断本次增强的结果能否缓存
+     *
+     * @param eventTypeArray 观察的事件类型
+     * @return TRUE:可以缓存
+     */
+    public boolean isCacheable(final Event.Type[] eventTypeArray) {
+        if (!isEnable()) {
+            return false;
+        }
+        for (final Event.Type type : eventTypeArray) {
+            switch (type) {
+                case CALL_BEFORE:
+                case CALL_RETURN:
+                case CALL_THROWS:
+                    return false;
+                default:
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计算缓存KEY
+     *
+     * @param srcByteCodeArray  原始字节码
+     * @param namespace         命名空间
+     * @param listenerId        监听器ID，由模块ID和观察顺序确定，重启后保持不变
+     * @param eventTypeArray    事件类型
+     * @param behaviorSignCodes 匹配上的行为签名
+     * @param isWeaveOutOfLine  是否把钩子代码移到桩方法中
+     * @return 缓存KEY
+     */
+    public String toKey(final byte[] srcByteCodeArray,
+                        final String namespace,
+                        final int listenerId,
+                        final Event.Type[] eventTypeArray,
+                        final Set<String> behaviorSignCodes,
+                        final boolean isWeaveOutOfLine) {
+        final StringBuilder fingerprint = new StringBuilder(256)
+                .append(agentVersion).append('\n')
+                .append(WEAVE_VERSION).append('\n')
+                .append(namespace).append('\n')
+                .append(listenerId).append('\n')
+                .append(isWeaveOutOfLine).append('\n');
+        for (final Event.Type type : new TreeSet<Event.Type>(Arrays.asList(eventTypeArray))) {
+            fingerprint.append(type.name()).append(',');
+        }
+        fingerprint.append('\n');
+        for (final String signCode : new TreeSet<String>(behaviorSignCodes)) {
+            fingerprint.append(signCode).append('\n');
+        }
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(srcByteCodeArray);
+            digest.update(fingerprint.toString().getBytes("UTF-8"));
+            return toHex(digest.digest());
+        } catch (Exception cause) {
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final char[] chars = new char[bytes.length << 1];
+        for (int index = 0; index < bytes.length; index++) {
+            chars[index << 1] = digits[(bytes[index] >> 4) & 0xF];
+            chars[(index << 1) + 1] = digits[bytes[index] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 缓存条目
+     */
+    public static class Entry {
+
+        public final int flags;
+        public final byte[] byteCodeArray;
+
+        Entry(final int flags, final byte[] byteCodeArray) {
+            this.flags = flags;
+            this.byteCodeArray = byteCodeArray;
+        }
+
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param key 缓存KEY
+     * @return 缓存条目，未命中或校验失败时返回null
+     */
+    public Entry get(final String key) {
+        final File dir = cacheDir;
+        if (null == dir) {
+            return null;
+        }
+        final String fileName = key.concat(FILE_SUFFIX);
+        synchronized (this) {
+            if (null == lruFiles.get(fileName)) {
+                missCount++;
+                return null;
+            }
+        }
+        final File file = new File(dir, fileName);
+        final Entry entry = read(file);
+        synchronized (this) {
+            if (null == entry) {
+                missCount++;
+                remove(fileName);
+                file.delete();
+                return null;
+            }
+            hitCount++;
+        }
+        // 记录访问时间，重启后LRU顺序不丢失
+        file.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    private Entry read(final File file) {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            final FileChannel channel = fis.getChannel();
+            if (channel.size() < HEADER_LENGTH) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC
+                    || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final int flags = buffer.getInt();
+            final int length = buffer.getInt();
+            final long checksum = buffer.getLong();
+            if (length < 0 || length != buffer.remaining()) {
+                return null;
+            }
+            final byte[] byteCodeArray = new byte[length];
+            buffer.get(byteCodeArray);
+            final CRC32 crc32 = new CRC32();
+            crc32.update(byteCodeArray);
+            if (crc32.getValue() != checksum) {
+                logger.warn(AGENT_COMMON_LOG_ID, "woven class cache file={} is corrupted, drop it.", file);
+                return null;
+            }
+            return new Entry(flags, byteCodeArray);
+        } catch (Throwable cause) {
+            logger.debug(AGENT_COMMON_LOG_ID, "read woven class cache file={} failed.", file, cause);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
+    /**
+     * 写入缓存
+     * <p>
+     * 只提交给后台线程，不在调用线程上做任何磁盘IO；写入队列已满时放弃本次写入
+     * </p>
+     *
+     * @param key           缓存KEY
+     * @param flags         标记
+     * @param byteCodeArray 增强后的字节码，提交后不能再修改
+     */
+    public void put(final String key, final int flags, final byte[] byteCodeArray) {
+        final File dir = cacheDir;
+        final ExecutorService executor = writeExecutor;
+        if (null == dir
+                || null == executor
+                || HEADER_LENGTH + byteCodeArray.length > maxBytes) {
+            return;
+        }
+        final String fileName = key.concat(FILE_SUFFIX);
+        if (null != pendingFileNames.putIfAbsent(fileName, Boolean.TRUE)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(dir, fileName, flags, byteCodeArray);
+                    } finally {
+                        pendingFileNames.remove(fileName);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException cause) {
+            pendingFileNames.remove(fileName);
+            logger.debug(AGENT_COMMON_LOG_ID, "woven class cache write queue is full, abandon file={}.", fileName);
+        }
+    }
+
+    // 在后台线程上写入缓存文件
+    private void write(final File dir, final String fileName, final int flags, final byte[] byteCodeArray) {
+        final File file = new File(dir, fileName);
+        final File tempFile = new File(dir, fileName + "." + Thread.currentThread().getId() + TEMP_FILE_SUFFIX);
+        final CRC32 crc32 = new CRC32();
+        crc32.update(byteCodeArray);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(flags).putInt(byteCodeArray.length).putLong(crc32.getValue());
+        header.flip();
+
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(tempFile);
+            final FileChannel channel = fos.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            final ByteBuffer body = ByteBuffer.wrap(byteCodeArray);
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+            // 先刷盘再改名，改名之后的文件一定是完整的
+            channel.force(true);
+            fos.close();
+            fos = null;
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                return;
+            }
+            // 刷新目录，改名本身也要落盘
+            forceDirectory(dir);
+        } catch (Throwable cause) {
+            logger.debug(AGENT_COMMON_LOG_ID, "write woven class cache file={} failed.", file, cause);
+            tempFile.delete();
+            return;
+        } finally {
+            IOUtils.closeQuietly(fos);
+        }
+
+        synchronized (this) {
+            // 写入期间缓存已停用或重新启用，不再登记
+            if (dir != cacheDir) {
+                return;
+            }
+            remove(fileName);
+            lruFiles.put(fileName, file.length());
+            totalBytes += file.length();
+            evictIfNecessary();
+        }
+    }
+
+    // JDK6没有打开目录的API，JDK7及以上通过反射调用FileChannel.open(Path, OpenOption...)刷新目录
+    private static Method toPathMethod;
+    private static Method openChannelMethod;
+    private static Object readOpenOptions;
+
+    static {
+        try {
+            final Class<?> pathClass = Class.forName("java.nio.file.Path");
+            final Class<?> openOptionClass = Class.forName("java.nio.file.OpenOption");
+            final Class<?> standardOpenOptionClass = Class.forName("java.nio.file.StandardOpenOption");
+            final Object options = Array.newInstance(openOptionClass, 1);
+            Array.set(options, 0, standardOpenOptionClass.getField("READ").get(null));
+            toPathMethod = File.class.getMethod("toPath");
+            openChannelMethod = FileChannel.class.getMethod("open", pathClass, options.getClass());
+            readOpenOptions = options;
+        } catch (Throwable cause) {
+            toPathMethod = null;
+            openChannelMethod = null;
+            readOpenOptions = null;
+        }
+    }
+
+    private void forceDirectory(final File dir) {
+        if (null == openChannelMethod) {
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            channel = (FileChannel) openChannelMethod.invoke(null, toPathMethod.invoke(dir), readOpenOptions);
+            channel.force(true);
+        } catch (Throwable cause) {
+            // 部分平台(如Windows)不支持打开目录，忽略
+        } finally {
+            IOUtils.closeQuietly(channel);
+        }
+    }
+
+    private void remove(final String fileName) {
+        final Long size = lruFiles.remove(fileName);
+        if (null != size) {
+            totalBytes -= size;
+        }
+    }
+
+    private synchronized void evictIfNecessary() {
+        final Iterator<Map.Entry<String, Long>> it = lruFiles.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            final Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            new File(cacheDir, eldest.getKey()).delete();
+        }
+    }
+
+    private String readAgentVersion() {
+        final InputStream is = getClass().getResourceAsStream("/version");
+        try {
+            return null == is ? "UNKNOW_VERSION" : IOUtils.toString(is).trim();
+        } catch (Throwable cause) {
+            return "UNKNOW_VERSION";
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+}
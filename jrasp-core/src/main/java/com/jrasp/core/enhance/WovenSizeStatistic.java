@@ -0,0 +1,167 @@
+package com.jrasp.core.enhance;
+
+import com.jrasp.api.model.WovenMethodSizeInfo;
+import com.jrasp.api.model.WovenSizeInfo;
+import com.jrasp.api.resource.WovenSizeMonitor;
+import com.jrasp.core.enhance.weaver.asm.MethodCodeSizeScanner;
+import org.objectweb.asm.ClassReader;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.jrasp.core.util.RaspStringUtils.toJavaClassName;
+
+/**
+ * 增强前后字节码大小统计
+ * <p>
+ * 织入的代码会让方法变长，原本能被JIT内联的小方法可能因此超过内联阈值，
+ * 热点路径的性能特征随之改变。这里按[类,观察]记录增强前后类文件和每个方法的字节码长度，
+ * 用于找出影响内联的增强
+ * </p>
+ */
+public class WovenSizeStatistic implements WovenSizeMonitor {
+
+    public static final WovenSizeStatistic instance = new WovenSizeStatistic();
+
+    // HotSpot默认的内联阈值：非热点方法(MaxInlineSize)和热点方法(FreqInlineSize)
+    private static final int MAX_INLINE_SIZE = 35;
+    private static final int FREQ_INLINE_SIZE = 325;
+
+    // BootstrapClassLoader下的报告
+    private final ConcurrentHashMap<String, WovenSizeInfo> bootstrapReports
+            = new ConcurrentHashMap<String, WovenSizeInfo>();
+
+    // 其他ClassLoader下的报告，ClassLoader被回收后随之消失
+    private final WeakHashMap<ClassLoader, ConcurrentHashMap<String, WovenSizeInfo>> loaderReports
+            = new WeakHashMap<ClassLoader, ConcurrentHashMap<String, WovenSizeInfo>>();
+
+    private WovenSizeStatistic() {
+
+    }
+
+    private ConcurrentHashMap<String, WovenSizeInfo> getReports(final ClassLoader loader) {
+        if (null == loader) {
+            return bootstrapReports;
+        }
+        synchronized (loaderReports) {
+            ConcurrentHashMap<String, WovenSizeInfo> reports = loaderReports.get(loader);
+            if (null == reports) {
+                loaderReports.put(loader, reports = new ConcurrentHashMap<String, WovenSizeInfo>());
+            }
+            return reports;
+        }
+    }
+
+    private List<ConcurrentHashMap<String, WovenSizeInfo>> listReports() {
+        final List<ConcurrentHashMap<String, WovenSizeInfo>> reportsList = new ArrayList<ConcurrentHashMap<String, WovenSizeInfo>>();
+        reportsList.add(bootstrapReports);
+        synchronized (loaderReports) {
+            reportsList.addAll(loaderReports.values());
+        }
+        return reportsList;
+    }
+
+    // 增强前可以内联，增强后不能内联
+    private static boolean isOverInlineSize(final int srcCodeSize,
+                                            final int wovenCodeSize) {
+        return (srcCodeSize <= MAX_INLINE_SIZE && wovenCodeSize > MAX_INLINE_SIZE)
+                || (srcCodeSize <= FREQ_INLINE_SIZE && wovenCodeSize > FREQ_INLINE_SIZE);
+    }
+
+    /**
+     * 记录一次增强前后的字节码大小
+     *
+     * @param loader            类加载器
+     * @param internalClassName 类名
+     * @param listenerId        监听器ID
+     * @param srcByteCodeArray  增强前的字节码
+     * @param toByteCodeArray   增强后的字节码
+     */
+    public void statistic(final ClassLoader loader,
+                          final String internalClassName,
+                          final int listenerId,
+                          final byte[] srcByteCodeArray,
+                          final byte[] toByteCodeArray) {
+        final Map<String, Integer> srcCodeSizes = MethodCodeSizeScanner.scan(new ClassReader(srcByteCodeArray));
+        final Map<String, Integer> wovenCodeSizes = MethodCodeSizeScanner.scan(new ClassReader(toByteCodeArray));
+        final List<WovenMethodSizeInfo> methods = new ArrayList<WovenMethodSizeInfo>();
+        for (final Map.Entry<String, Integer> entry : wovenCodeSizes.entrySet()) {
+            final Integer srcCodeSize = srcCodeSizes.get(entry.getKey());
+            final int wovenCodeSize = entry.getValue();
+            if (null != srcCodeSize && srcCodeSize == wovenCodeSize) {
+                continue;
+            }
+            methods.add(new WovenMethodSizeInfo(
+                    entry.getKey(),
+                    null == srcCodeSize ? 0 : srcCodeSize,
+                    wovenCodeSize,
+                    null != srcCodeSize && isOverInlineSize(srcCodeSize, wovenCodeSize)
+            ));
+        }
+        final String javaClassName = toJavaClassName(internalClassName);
+        getReports(loader).put(
+                javaClassName + "#" + listenerId,
+                new WovenSizeInfo(javaClassName, listenerId, srcByteCodeArray.length, toByteCodeArray.length, methods)
+        );
+    }
+
+    /**
+     * 移除观察的报告，观察删除之后类已经恢复
+     *
+     * @param listenerId 监听器ID
+     */
+    public void remove(final int listenerId) {
+        for (final ConcurrentHashMap<String, WovenSizeInfo> reports : listReports()) {
+            final Iterator<WovenSizeInfo> it = reports.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().getListenerId() == listenerId) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getClassCount() {
+        int count = 0;
+        for (final ConcurrentHashMap<String, WovenSizeInfo> reports : listReports()) {
+            count += reports.size();
+        }
+        return count;
+    }
+
+    @Override
+    public int getOverInlineSizeMethodCount() {
+        int count = 0;
+        for (final ConcurrentHashMap<String, WovenSizeInfo> reports : listReports()) {
+            for (final WovenSizeInfo report : reports.values()) {
+                for (final WovenMethodSizeInfo method : report.getMethods()) {
+                    if (method.isOverInlineSize()) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<WovenSizeInfo> list(final int limit) {
+        final List<WovenSizeInfo> reportList = new ArrayList<WovenSizeInfo>();
+        for (final ConcurrentHashMap<String, WovenSizeInfo> reports : listReports()) {
+            reportList.addAll(reports.values());
+        }
+        Collections.sort(reportList, new Comparator<WovenSizeInfo>() {
+            @Override
+            public int compare(WovenSizeInfo o1, WovenSizeInfo o2) {
+                final int growth1 = o1.getWovenSize() - o1.getSrcSize();
+                final int growth2 = o2.getWovenSize() - o2.getSrcSize();
+                return growth1 < growth2 ? 1 : (growth1 == growth2 ? 0 : -1);
+            }
+        });
+        return reportList.size() > limit
+                ? new ArrayList<WovenSizeInfo>(reportList.subList(0, Math.max(0, limit)))
+                : reportList;
+    }
+
+}
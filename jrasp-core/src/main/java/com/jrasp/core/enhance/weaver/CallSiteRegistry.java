@@ -0,0 +1,149 @@
+package com.jrasp.core.enhance.weaver;
+
+import com.jrasp.api.event.CallSite;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 调用点注册表
+ * <p>
+ * 织入CALL事件时为每个调用点分配一个ID，相同的调用点(同一行、同一个被调用方法)只分配一次，
+ * 重新织入同一个类时得到的还是同一个ID。
+ * 运行时按ID取调用点描述只是一次哈希查找加一次数组读取，不加锁
+ * </p>
+ * <p>
+ * 调用点按监听器分开登记：一个监听器的调用点数量只随它织入过的不同调用点增长，
+ * 删除观察(包括模块卸载)时随监听器一起释放，注册表不会在模块反复加载卸载中无限增长
+ * </p>
+ */
+public class CallSiteRegistry {
+
+    public static final CallSiteRegistry instance = new CallSiteRegistry();
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // 监听器ID -> 该监听器的调用点
+    private final ConcurrentHashMap<Integer, ListenerCallSites> listenerCallSitesMapping
+            = new ConcurrentHashMap<Integer, ListenerCallSites>();
+
+    private CallSiteRegistry() {
+
+    }
+
+    private ListenerCallSites getOrCreate(final int listenerId) {
+        final ListenerCallSites listenerCallSites = listenerCallSitesMapping.get(listenerId);
+        if (null != listenerCallSites) {
+            return listenerCallSites;
+        }
+        final ListenerCallSites newListenerCallSites = new ListenerCallSites();
+        final ListenerCallSites existListenerCallSites = listenerCallSitesMapping.putIfAbsent(listenerId, newListenerCallSites);
+        return null == existListenerCallSites ? newListenerCallSites : existListenerCallSites;
+    }
+
+    /**
+     * 注册调用点
+     *
+     * @param listenerId 监听器ID
+     * @param lineNumber 调用所在行号
+     * @param owner      被调用方法的声明类，Java类名格式
+     * @param name       被调用方法名
+     * @param desc       被调用方法描述
+     * @return 调用点ID，只在该监听器内唯一
+     */
+    public int register(final int listenerId,
+                        final int lineNumber,
+                        final String owner,
+                        final String name,
+                        final String desc) {
+        return getOrCreate(listenerId).register(lineNumber, owner, name, desc);
+    }
+
+    /**
+     * 获取调用点
+     *
+     * @param listenerId 监听器ID
+     * @param callSiteId 调用点ID
+     * @return 调用点，ID不存在或监听器已释放时返回null
+     */
+    public CallSite get(final int listenerId, final int callSiteId) {
+        final ListenerCallSites listenerCallSites = listenerCallSitesMapping.get(listenerId);
+        return null == listenerCallSites
+                ? null
+                : listenerCallSites.get(callSiteId);
+    }
+
+    /**
+     * 释放监听器的所有调用点，删除观察时调用
+     *
+     * @param listenerId 监听器ID
+     */
+    public void release(final int listenerId) {
+        listenerCallSitesMapping.remove(listenerId);
+    }
+
+    /**
+     * 获取已注册的调用点数量
+     *
+     * @return 调用点数量
+     */
+    public int size() {
+        int size = 0;
+        for (final ListenerCallSites listenerCallSites : listenerCallSitesMapping.values()) {
+            size += listenerCallSites.size();
+        }
+        return size;
+    }
+
+    /**
+     * 单个监听器的调用点
+     */
+    private static class ListenerCallSites {
+
+        // 注册时使用，只在持有锁时访问
+        private final Map<CallSite, CallSite> internCallSites = new HashMap<CallSite, CallSite>();
+
+        // 按ID存放的调用点，扩容时整体替换
+        private volatile CallSite[] callSites = new CallSite[INITIAL_CAPACITY];
+
+        private int size = 0;
+
+        synchronized int register(final int lineNumber,
+                                  final String owner,
+                                  final String name,
+                                  final String desc) {
+            final CallSite key = new CallSite(CallSite.UNREGISTERED_ID, lineNumber, owner, name, desc);
+            final CallSite exist = internCallSites.get(key);
+            if (null != exist) {
+                return exist.id;
+            }
+
+            final CallSite callSite = new CallSite(size, lineNumber, owner.intern(), name.intern(), desc.intern());
+            CallSite[] current = callSites;
+            if (size == current.length) {
+                final CallSite[] newCallSites = new CallSite[current.length << 1];
+                System.arraycopy(current, 0, newCallSites, 0, size);
+                current = newCallSites;
+            }
+            current[size++] = callSite;
+            // 先写入元素再发布数组，保证拿到ID的线程一定能读到调用点
+            callSites = current;
+            internCallSites.put(callSite, callSite);
+            return callSite.id;
+        }
+
+        CallSite get(final int callSiteId) {
+            final CallSite[] current = callSites;
+            return callSiteId >= 0 && callSiteId < current.length
+                    ? current[callSiteId]
+                    : null;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -2,13 +2,13 @@ package com.jrasp.core.enhance.weaver;
 
 import com.jrasp.api.ProcessControlException;
 import com.jrasp.api.event.BeforeEvent;
+import com.jrasp.api.event.CallSite;
 import com.jrasp.api.event.Event;
 import com.jrasp.api.event.InvokeEvent;
 import com.jrasp.api.listener.EventListener;
 import com.jrasp.api.log.Log;
 import com.jrasp.core.classloader.BusinessClassLoaderHolder;
 import com.jrasp.core.log.LogFactory;
-import com.jrasp.core.util.ObjectIDs;
 import com.jrasp.core.util.RaspProtector;
 
 import java.com.jrasp.spy.Spy;
@@ -58,11 +58,27 @@ public class EventListenerHandler implements SpyHandler {
     public void active(final int listenerId,
                        final EventListener listener,
                        final Event.Type[] eventTypes) {
-        mappingOfEventProcessor.put(listenerId, new EventProcessor(listenerId, listener, eventTypes));
-        logger.info(ACTIVED_LISTENER_LOG_ID, "activated listener[id={};target={};] event={}",
+        active(listenerId, listener, eventTypes, false);
+    }
+
+    /**
+     * 注册事件处理器
+     *
+     * @param listenerId       事件监听器ID
+     * @param listener         事件监听器
+     * @param eventTypes       监听事件集合
+     * @param isProcessTopOnly 是否只处理调用过程最外层的事件
+     */
+    public void active(final int listenerId,
+                       final EventListener listener,
+                       final Event.Type[] eventTypes,
+                       final boolean isProcessTopOnly) {
+        mappingOfEventProcessor.put(listenerId, new EventProcessor(listenerId, listener, eventTypes, isProcessTopOnly));
+        logger.info(ACTIVED_LISTENER_LOG_ID, "activated listener[id={};target={};] event={};process-top-only={}",
                 listenerId,
                 listener,
-                join(eventTypes, ",")
+                join(eventTypes, ","),
+                isProcessTopOnly
         );
     }
 
@@ -311,7 +327,7 @@ public class EventListenerHandler implements SpyHandler {
     }
 
     @Override
-    public Spy.Ret handleOnBefore(int listenerId, int targetClassLoaderObjectID, Object[] argumentArray, String javaClassName, String javaMethodName, String javaMethodDesc, Object target) throws Throwable {
+    public Spy.Ret handleOnBefore(int listenerId, ClassLoader targetClassLoader, Object[] argumentArray, String javaClassName, String javaMethodName, String javaMethodDesc, Object target) throws Throwable {
 
         // 在守护区内产生的事件不需要响应
         if (RaspProtector.instance.isInProtecting()) {
@@ -345,13 +361,17 @@ public class EventListenerHandler implements SpyHandler {
         // 调用过程ID
         final int processId = process.getProcessId();
 
-        final ClassLoader javaClassLoader = ObjectIDs.instance.getObject(targetClassLoaderObjectID);
+        // 只观察最外层时，嵌套调用只压栈(保持BEFORE/RETURN对齐)，不构造事件也不调用监听器
+        if (processor.isProcessTopOnly && processId != invokeId) {
+            return newInstanceForNone();
+        }
+
         //放置业务类加载器
-        BusinessClassLoaderHolder.setBussinessClassLoader(javaClassLoader);
+        BusinessClassLoaderHolder.setBussinessClassLoader(targetClassLoader);
         final BeforeEvent event = process.getEventFactory().makeBeforeEvent(
                 processId,
                 invokeId,
-                javaClassLoader,
+                targetClassLoader,
                 javaClassName,
                 javaMethodName,
                 javaMethodDesc,
@@ -441,6 +461,11 @@ public class EventListenerHandler implements SpyHandler {
             );
         }
 
+        // 只观察最外层时，嵌套调用在出栈后直接返回
+        if (wrap.isProcessTopOnly && processId != invokeId) {
+            return newInstanceForNone();
+        }
+
         final Event event = isReturn
                 ? process.getEventFactory().makeReturnEvent(processId, invokeId, object)
                 : process.getEventFactory().makeThrowsEvent(processId, invokeId, (Throwable) object);
@@ -455,7 +480,7 @@ public class EventListenerHandler implements SpyHandler {
 
 
     @Override
-    public void handleOnCallBefore(int listenerId, int lineNumber, String owner, String name, String desc) throws Throwable {
+    public void handleOnCallBefore(int listenerId, int callSiteId) throws Throwable {
 
         // 在守护区内产生的事件不需要响应
         if (RaspProtector.instance.isInProtecting()) {
@@ -485,14 +510,20 @@ public class EventListenerHandler implements SpyHandler {
         final int processId = process.getProcessId();
         final int invokeId = process.getInvokeId();
 
-        // 如果事件处理流被忽略，则直接返回，不产生后续事件
-        if (process.isIgnoreProcess()) {
+        // 如果事件处理流被忽略，或只观察最外层而当前处于嵌套调用中，则直接返回，不产生后续事件
+        if (process.isIgnoreProcess()
+                || (wrap.isProcessTopOnly && processId != invokeId)) {
+            return;
+        }
+
+        final CallSite callSite = CallSiteRegistry.instance.get(listenerId, callSiteId);
+        if (null == callSite) {
             return;
         }
 
         final Event event = process
                 .getEventFactory()
-                .makeCallBeforeEvent(processId, invokeId, lineNumber, owner, name, desc);
+                .makeCallBeforeEvent(processId, invokeId, callSite);
         try {
             handleEvent(listenerId, processId, invokeId, event, wrap);
         } finally {
@@ -525,8 +556,9 @@ public class EventListenerHandler implements SpyHandler {
         final int processId = process.getProcessId();
         final int invokeId = process.getInvokeId();
 
-        // 如果事件处理流被忽略，则直接返回，不产生后续事件
-        if (process.isIgnoreProcess()) {
+        // 如果事件处理流被忽略，或只观察最外层而当前处于嵌套调用中，则直接返回，不产生后续事件
+        if (process.isIgnoreProcess()
+                || (wrap.isProcessTopOnly && processId != invokeId)) {
             return;
         }
 
@@ -541,7 +573,7 @@ public class EventListenerHandler implements SpyHandler {
     }
 
     @Override
-    public void handleOnCallThrows(int listenerId, String throwException) throws Throwable {
+    public void handleOnCallThrows(int listenerId, Throwable throwException) throws Throwable {
 
         // 在守护区内产生的事件不需要响应
         if (RaspProtector.instance.isInProtecting()) {
@@ -565,14 +597,15 @@ public class EventListenerHandler implements SpyHandler {
         final int processId = process.getProcessId();
         final int invokeId = process.getInvokeId();
 
-        // 如果事件处理流被忽略，则直接返回，不产生后续事件
-        if (process.isIgnoreProcess()) {
+        // 如果事件处理流被忽略，或只观察最外层而当前处于嵌套调用中，则直接返回，不产生后续事件
+        if (process.isIgnoreProcess()
+                || (wrap.isProcessTopOnly && processId != invokeId)) {
             return;
         }
 
         final Event event = process
                 .getEventFactory()
-                .makeCallThrowsEvent(processId, invokeId, throwException);
+                .makeCallThrowsEvent(processId, invokeId, throwException.getClass().getName());
         try {
             handleEvent(listenerId, processId, invokeId, event, wrap);
         } finally {
@@ -608,8 +641,9 @@ public class EventListenerHandler implements SpyHandler {
         final int processId = process.getProcessId();
         final int invokeId = process.getInvokeId();
 
-        // 如果事件处理流被忽略，则直接返回，不产生后续事件
-        if (process.isIgnoreProcess()) {
+        // 如果事件处理流被忽略，或只观察最外层而当前处于嵌套调用中，则直接返回，不产生后续事件
+        if (process.isIgnoreProcess()
+                || (wrap.isProcessTopOnly && processId != invokeId)) {
             return;
         }
 
@@ -621,4 +655,75 @@ public class EventListenerHandler implements SpyHandler {
         }
     }
 
+    @Override
+    public long[] handleOnLineCoverageBegin(int listenerId, int wordCount) throws Throwable {
+
+        // 在守护区内产生的事件不需要响应，由Spy临时分配位图
+        if (RaspProtector.instance.isInProtecting()) {
+            return null;
+        }
+
+        final EventProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        if (null == wrap) {
+            return null;
+        }
+
+        if (wrap.isFrozen()) {
+            return null;
+        }
+
+        final EventProcessor.Process process = wrap.processRef.get();
+
+        // BEFORE没有压栈(调用过程被忽略)时位图不会被送出，也就不需要复用
+        if (process.isEmptyStack()
+                || process.isIgnoreProcess()) {
+            return null;
+        }
+
+        return process.getLineCoverageBitmap(wordCount);
+    }
+
+    @Override
+    public void handleOnLineCoverage(int listenerId, int firstLineNumber, long[] bitmap) throws Throwable {
+
+        // 在守护区内产生的事件不需要响应
+        // BEFORE的处理流程改变了方法的执行时，位图还没有取用
+        if (RaspProtector.instance.isInProtecting()
+                || null == bitmap) {
+            return;
+        }
+
+        final EventProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        if (null == wrap) {
+            return;
+        }
+
+        if (wrap.isFrozen()) {
+            return;
+        }
+
+        final EventProcessor.Process process = wrap.processRef.get();
+
+        // 如果当前调用过程信息堆栈是空的,说明BEFORE/LINE_COVERAGE错位
+        if (process.isEmptyStack()) {
+            return;
+        }
+
+        final int processId = process.getProcessId();
+        final int invokeId = process.getInvokeId();
+
+        // 如果事件处理流被忽略，或只观察最外层而当前处于嵌套调用中，则直接返回，不产生后续事件
+        if (process.isIgnoreProcess()
+                || (wrap.isProcessTopOnly && processId != invokeId)) {
+            return;
+        }
+
+        final Event event = process.getEventFactory().makeLineCoverageEvent(processId, invokeId, firstLineNumber, bitmap);
+        try {
+            handleEvent(listenerId, processId, invokeId, event, wrap);
+        } finally {
+            process.getEventFactory().returnEvent(event);
+        }
+    }
+
 }
@@ -11,6 +11,7 @@ import com.jrasp.core.util.collection.GaStack;
 import com.jrasp.core.util.collection.ThreadUnsafeGaStack;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -137,6 +138,30 @@ public class EventProcessor {
             isExceptionFromImmediately = true;
         }
 
+        /**
+         * 取用当前调用的行覆盖位图，取用时清零
+         *
+         * @param wordCount 位图至少需要的长度
+         * @return 行覆盖位图，长度可能大于wordCount，多出的部分始终为0
+         */
+        long[] getLineCoverageBitmap(final int wordCount) {
+            final int deep = stack.deep() - 1;
+            long[][] lineCoverageBitmaps = lineCoverageBitmapsRef.get();
+            if (null == lineCoverageBitmaps
+                    || deep >= lineCoverageBitmaps.length) {
+                lineCoverageBitmaps = null == lineCoverageBitmaps
+                        ? new long[Math.max(deep + 1, 8)][]
+                        : Arrays.copyOf(lineCoverageBitmaps, Math.max(deep + 1, lineCoverageBitmaps.length << 1));
+                lineCoverageBitmapsRef.set(lineCoverageBitmaps);
+            }
+            final long[] bitmap = lineCoverageBitmaps[deep];
+            if (null == bitmap || bitmap.length < wordCount) {
+                return lineCoverageBitmaps[deep] = new long[wordCount];
+            }
+            Arrays.fill(bitmap, 0L);
+            return bitmap;
+        }
+
         /**
          * 获取事件工厂
          *
@@ -168,6 +193,15 @@ public class EventProcessor {
     final EventListener listener;
     final Event.Type[] eventTypes;
 
+    // 只处理调用过程最外层的事件，嵌套调用压栈后直接返回
+    final boolean isProcessTopOnly;
+
+    // 按调用深度复用的行覆盖位图
+    // 同一线程中同一深度上的调用只能先后发生，上一次调用返回之后位图才会被下一次调用取用。
+    // 调用过程在顶层调用结束后就会清理，位图不能放在调用过程中，否则每次顶层调用都要重新分配；
+    // 值只有基本类型数组，线程本地变量残留时不会拖住任何ClassLoader
+    final ThreadLocal<long[][]> lineCoverageBitmapsRef = new ThreadLocal<long[][]>();
+
     int status;
     Map<Thread,Thread> currentThreadSet;
 
@@ -180,10 +214,12 @@ public class EventProcessor {
 
     EventProcessor(final int listenerId,
                    final EventListener listener,
-                   final Event.Type[] eventTypes) {
+                   final Event.Type[] eventTypes,
+                   final boolean isProcessTopOnly) {
 
         this.listenerId = listenerId;
         this.eventTypes = eventTypes;
+        this.isProcessTopOnly = isProcessTopOnly;
         this.listener = isInterruptEventHandler(listener.getClass())
                 ? new InterruptedEventListenerImpl(listener)
                 : listener;
@@ -246,22 +282,27 @@ public class EventProcessor {
 
     private void cleanThreadLocal(Map<Thread,Thread> threadSet) {
         try {
-            Set<Thread> threads = threadSet.keySet();
-            for(Thread thread : threads){
-                //反射调用 ThreadLocal.ThreadLocalMap.remove(ThreadLocal)
-                Object o = RaspReflectUtils.unCaughtGetClassDeclaredJavaFieldValue(Thread.class,"threadLocals",thread);
-                if(null != o){
-                    Method method = RaspReflectUtils.unCaughtGetClassDeclaredJavaMethod(o.getClass(),"remove",ThreadLocal.class);
-                    RaspReflectUtils.unCaughtInvokeMethod(method,o,this.processRef);
-                    //AdviceAdapterListener中的opStackRef也需要释放
-                    if(this.listener instanceof AdviceAdapterListener){
-                        Object opStackRef = RaspReflectUtils.unCaughtGetClassDeclaredJavaFieldValue(AdviceAdapterListener.class,"opStackRef",this.listener);
-                        RaspReflectUtils.unCaughtInvokeMethod(method,o,opStackRef);
-                    }
-                }
+            for (Thread thread : threadSet.keySet()) {
+                removeThreadLocal(thread, this.processRef);
+            }
+            //AdviceAdapterListener的通知堆栈在调用结束后依然保留，由各线程在自己的下一次事件时清理
+            final EventListener target = this.listener instanceof InterruptedEventListenerImpl
+                    ? ((InterruptedEventListenerImpl) this.listener).listener
+                    : this.listener;
+            if (target instanceof AdviceAdapterListener) {
+                ((AdviceAdapterListener) target).destroy();
             }
         } catch (Exception e) {
             logger.error(EVENT_PROCESSOR_ERROR_LOG_ID,"remove threadLocal error !",e);
         }
     }
+
+    //反射调用 ThreadLocal.ThreadLocalMap.remove(ThreadLocal)
+    private void removeThreadLocal(Thread thread, ThreadLocal<?> threadLocal) {
+        Object o = RaspReflectUtils.unCaughtGetClassDeclaredJavaFieldValue(Thread.class,"threadLocals",thread);
+        if(null != o){
+            Method method = RaspReflectUtils.unCaughtGetClassDeclaredJavaMethod(o.getClass(),"remove",ThreadLocal.class);
+            RaspReflectUtils.unCaughtInvokeMethod(method,o,threadLocal);
+        }
+    }
 }
@@ -23,11 +23,14 @@ class SingleEventFactory {
     private static final long objectFieldInReturnEventOffset;
     private static final long throwableFieldInThrowsEventOffset;
     private static final long lineNumberFieldInLineEventOffset;
+    private static final long firstLineNumberFieldInLineCoverageEventOffset;
+    private static final long bitmapFieldInLineCoverageEventOffset;
 
     private static final long lineNumberFieldInCallBeforeEventOffset;
     private static final long ownerFieldInCallBeforeEventOffset;
     private static final long nameFieldInCallBeforeEventOffset;
     private static final long descFieldInCallBeforeEventOffset;
+    private static final long callSiteFieldInCallBeforeEventOffset;
     private static final long throwExceptionFieldInCallThrowsEventOffset;
 
     static {
@@ -44,11 +47,14 @@ class SingleEventFactory {
             objectFieldInReturnEventOffset = unsafe.objectFieldOffset(ReturnEvent.class.getDeclaredField("object"));
             throwableFieldInThrowsEventOffset = unsafe.objectFieldOffset(ThrowsEvent.class.getDeclaredField("throwable"));
             lineNumberFieldInLineEventOffset = unsafe.objectFieldOffset(LineEvent.class.getDeclaredField("lineNumber"));
+            firstLineNumberFieldInLineCoverageEventOffset = unsafe.objectFieldOffset(LineCoverageEvent.class.getDeclaredField("firstLineNumber"));
+            bitmapFieldInLineCoverageEventOffset = unsafe.objectFieldOffset(LineCoverageEvent.class.getDeclaredField("bitmap"));
 
             lineNumberFieldInCallBeforeEventOffset = unsafe.objectFieldOffset(CallBeforeEvent.class.getDeclaredField("lineNumber"));
             ownerFieldInCallBeforeEventOffset = unsafe.objectFieldOffset(CallBeforeEvent.class.getDeclaredField("owner"));
             nameFieldInCallBeforeEventOffset = unsafe.objectFieldOffset(CallBeforeEvent.class.getDeclaredField("name"));
             descFieldInCallBeforeEventOffset = unsafe.objectFieldOffset(CallBeforeEvent.class.getDeclaredField("desc"));
+            callSiteFieldInCallBeforeEventOffset = unsafe.objectFieldOffset(CallBeforeEvent.class.getDeclaredField("callSite"));
             throwExceptionFieldInCallThrowsEventOffset = unsafe.objectFieldOffset(CallThrowsEvent.class.getDeclaredField("throwException"));
         } catch (Exception e) {
             throw new Error(e);
@@ -56,6 +62,7 @@ class SingleEventFactory {
     }
 
     private LineEvent lineEvent = null;
+    private LineCoverageEvent lineCoverageEvent = null;
     private BeforeEvent beforeEvent = null;
     private ReturnEvent returnEvent = null;
     private ThrowsEvent throwsEvent = null;
@@ -149,21 +156,33 @@ class SingleEventFactory {
         return lineEvent;
     }
 
+    public LineCoverageEvent makeLineCoverageEvent(final int processId,
+                                                   final int invokeId,
+                                                   final int firstLineNumber,
+                                                   final long[] bitmap) {
+        if (null == lineCoverageEvent) {
+            lineCoverageEvent = new LineCoverageEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, -1, null);
+        }
+        unsafe.putInt(lineCoverageEvent, processIdFieldInInvokeEventOffset, processId);
+        unsafe.putInt(lineCoverageEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        unsafe.putInt(lineCoverageEvent, firstLineNumberFieldInLineCoverageEventOffset, firstLineNumber);
+        unsafe.putObject(lineCoverageEvent, bitmapFieldInLineCoverageEventOffset, bitmap);
+        return lineCoverageEvent;
+    }
+
     public CallBeforeEvent makeCallBeforeEvent(final int processId,
                                                final int invokeId,
-                                               final int lineNumber,
-                                               final String owner,
-                                               final String name,
-                                               final String desc) {
+                                               final CallSite callSite) {
         if (null == callBeforeEvent) {
             callBeforeEvent = new CallBeforeEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, -1, null, null, null);
         }
         unsafe.putInt(callBeforeEvent, processIdFieldInInvokeEventOffset, processId);
         unsafe.putInt(callBeforeEvent, invokeIdFieldInInvokeEventOffset, invokeId);
-        unsafe.putInt(callBeforeEvent, lineNumberFieldInCallBeforeEventOffset, lineNumber);
-        unsafe.putObject(callBeforeEvent, ownerFieldInCallBeforeEventOffset, owner);
-        unsafe.putObject(callBeforeEvent, nameFieldInCallBeforeEventOffset, name);
-        unsafe.putObject(callBeforeEvent, descFieldInCallBeforeEventOffset, desc);
+        unsafe.putInt(callBeforeEvent, lineNumberFieldInCallBeforeEventOffset, callSite.lineNumber);
+        unsafe.putObject(callBeforeEvent, ownerFieldInCallBeforeEventOffset, callSite.owner);
+        unsafe.putObject(callBeforeEvent, nameFieldInCallBeforeEventOffset, callSite.name);
+        unsafe.putObject(callBeforeEvent, descFieldInCallBeforeEventOffset, callSite.desc);
+        unsafe.putObject(callBeforeEvent, callSiteFieldInCallBeforeEventOffset, callSite);
         return callBeforeEvent;
     }
 
@@ -195,6 +214,9 @@ class SingleEventFactory {
                 unsafe.putObject(event, targetFieldInBeforeEventOffset, null);
                 unsafe.putObject(event, argumentArrayFieldInBeforeEventOffset, null);
                 break;
+            case LINE_COVERAGE:
+                unsafe.putObject(event, bitmapFieldInLineCoverageEventOffset, null);
+                break;
             case IMMEDIATELY_THROWS:
             case THROWS:
                 // FIXED #130
@@ -21,12 +21,12 @@ public interface AsmMethods {
     }
 
     /**
-     * asm method of {@link Spy#spyMethodOnBefore(Object[], String, int, int, String, String, String, Object)}
+     * asm method of {@link Spy#spyMethodOnBefore(Object[], String, int, ClassLoader, String, String, String, Object)}
      */
     Method ASM_METHOD_Spy$spyMethodOnBefore = getAsmMethod(
             Spy.class,
             "spyMethodOnBefore",
-            Object[].class, String.class, int.class, int.class, String.class, String.class, String.class, Object.class
+            Object[].class, String.class, int.class, ClassLoader.class, String.class, String.class, String.class, Object.class
     );
 
     /**
@@ -58,12 +58,30 @@ public interface AsmMethods {
     );
 
     /**
-     * asm method of {@link Spy#spyMethodOnCallBefore(int, String, String, String, String, int)}
+     * asm method of {@link Spy#spyMethodOnLineCoverageBegin(int, String, int)}
+     */
+    Method ASM_METHOD_Spy$spyMethodOnLineCoverageBegin = getAsmMethod(
+            Spy.class,
+            "spyMethodOnLineCoverageBegin",
+            int.class, String.class, int.class
+    );
+
+    /**
+     * asm method of {@link Spy#spyMethodOnLineCoverage(long[], int, String, int)}
+     */
+    Method ASM_METHOD_Spy$spyMethodOnLineCoverage = getAsmMethod(
+            Spy.class,
+            "spyMethodOnLineCoverage",
+            long[].class, int.class, String.class, int.class
+    );
+
+    /**
+     * asm method of {@link Spy#spyMethodOnCallBefore(int, String, int)}
      */
     Method ASM_METHOD_Spy$spyMethodOnCallBefore = getAsmMethod(
             Spy.class,
             "spyMethodOnCallBefore",
-            int.class, String.class, String.class, String.class, String.class, int.class
+            int.class, String.class, int.class
     );
 
     /**
@@ -76,22 +94,22 @@ public interface AsmMethods {
     );
 
     /**
-     * asm method of {@link Spy#spyMethodOnCallThrows(String, String, int)}
+     * asm method of {@link Spy#spyMethodOnCallThrows(Throwable, String, int)}
      */
     Method ASM_METHOD_Spy$spyMethodOnCallThrows = getAsmMethod(
             Spy.class,
             "spyMethodOnCallThrows",
-            String.class, String.class, int.class
+            Throwable.class, String.class, int.class
     );
 
-//    /**
-//     * asm method of {@link Class#forName(String)}
-//     */
-//    Method ASM_METHOD_Class$forName = getAsmMethod(
-//            Class.class,
-//            "forName",
-//            String.class
-//    );
+    /**
+     * asm method of {@link Class#forName(String)}
+     */
+    Method ASM_METHOD_Class$forName = getAsmMethod(
+            Class.class,
+            "forName",
+            String.class
+    );
 
     Method ASM_METHOD_Class$getName = getAsmMethod(
             Class.class,
@@ -106,13 +124,13 @@ public interface AsmMethods {
             "getClass"
     );
 
-//    /**
-//     * asm method of {@link Class#getClassLoader()}
-//     */
-//    Method ASM_METHOD_Class$getClassLoader = getAsmMethod(
-//            Class.class,
-//            "getClassLoader"
-//    );
+    /**
+     * asm method of {@link Class#getClassLoader()}
+     */
+    Method ASM_METHOD_Class$getClassLoader = getAsmMethod(
+            Class.class,
+            "getClassLoader"
+    );
 
 
 }
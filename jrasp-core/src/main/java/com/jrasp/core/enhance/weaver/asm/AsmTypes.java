@@ -11,4 +11,5 @@ public interface AsmTypes {
     Type ASM_TYPE_SPY_RET = Type.getType(Spy.Ret.class);
     Type ASM_TYPE_THROWABLE = Type.getType(Throwable.class);
     Type ASM_TYPE_CLASS = Type.getType(Class.class);
+    Type ASM_TYPE_LONG_ARRAY = Type.getType(long[].class);
 }
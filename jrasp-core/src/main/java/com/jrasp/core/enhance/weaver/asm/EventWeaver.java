@@ -1,17 +1,23 @@
 package com.jrasp.core.enhance.weaver.asm;
 
 import com.jrasp.api.event.Event;
+import com.jrasp.api.filter.CallSiteFilter;
+import com.jrasp.core.enhance.weaver.CallSiteRegistry;
 import com.jrasp.core.enhance.weaver.CodeLock;
 import com.jrasp.core.manager.NativeMethodEnhanceAware;
 
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.JSRInlinerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.jrasp.core.util.RaspStringUtils.toInternalClassName;
@@ -64,14 +70,30 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
 
     public final static String NATIVE_PREFIX = "JRASP";
 
+    /**
+     * 桩方法名前缀，钩子代码移到桩方法后，桩方法不能再被其他观察增强
+     */
+    public final static String STUB_PREFIX = NATIVE_PREFIX + "$";
+
+    // BEFORE桩方法：(Object[] argumentArray, Object target) -> Spy.Ret
+    private final static String BEFORE_STUB_DESC = Type.getMethodDescriptor(ASM_TYPE_SPY_RET, Type.getType(Object[].class), ASM_TYPE_OBJECT);
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final int targetClassLoaderObjectID;
+    // 目标类的字节码版本，在visit()时获取
+    private int targetClassVersion;
     private final String namespace;
     private final int listenerId;
     private final String targetJavaClassName;
     private final Set<String> signCodes;
     private final Event.Type[] eventTypeArray;
+    private final CallSiteFilter callSiteFilter;
+
+    // 方法名+方法描述 : [起始行号,结束行号]，只有观察行覆盖时才有
+    private final Map<String, int[]> lineNumberRanges;
+
+    // 共享出口的方法：方法名+方法描述
+    private final Set<String> sharedExitMethods;
     private final List<Method> addMethodNodes = new ArrayList<Method>();
     NativeMethodEnhanceAware nativeMethodEnhanceAware = null;
 
@@ -86,24 +108,44 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
     private final boolean hasCallReturn;
     private final boolean isCallEnable;
 
+    // 是否把钩子代码移到桩方法中：被增强的方法只保留一次静态调用，
+    // 常量压栈和ClassLoader获取都放到桩方法里，减小方法长度，避免超过JIT的内联阈值
+    private final boolean isWeaveOutOfLine;
+
+    // 目标类是否支持新增桩方法，在visit()时确定
+    private boolean isOutOfLine;
+    private boolean isTargetInterface;
+
+    // 转发桩方法名 : Spy方法，同一个类在同一个监听器下共用
+    private final Map<String, org.objectweb.asm.commons.Method> forwardStubs = new LinkedHashMap<String, org.objectweb.asm.commons.Method>();
+
+    // BEFORE桩方法：[桩方法名,方法名,方法描述]，每个被增强的方法一个
+    private final List<String[]> beforeStubs = new ArrayList<String[]>();
+
     public EventWeaver(
         final NativeMethodEnhanceAware nativeMethodEnhanceAware,
         final int api,
         final ClassVisitor cv,
         final String namespace,
         final int listenerId,
-        final int targetClassLoaderObjectID,
         final String targetClassInternalName,
         final Set<String/*BehaviorStructure#getSignCode()*/> signCodes,
-        final Event.Type[] eventTypeArray) {
+        final Event.Type[] eventTypeArray,
+        final CallSiteFilter callSiteFilter,
+        final Map<String, int[]> lineNumberRanges,
+        final Set<String> sharedExitMethods,
+        final boolean isWeaveOutOfLine) {
         super(api, cv);
         this.nativeMethodEnhanceAware = nativeMethodEnhanceAware;
-        this.targetClassLoaderObjectID = targetClassLoaderObjectID;
         this.namespace = namespace;
         this.listenerId = listenerId;
         this.targetJavaClassName = toJavaClassName(targetClassInternalName);
         this.signCodes = signCodes;
         this.eventTypeArray = eventTypeArray;
+        this.callSiteFilter = callSiteFilter;
+        this.lineNumberRanges = lineNumberRanges;
+        this.sharedExitMethods = sharedExitMethods;
+        this.isWeaveOutOfLine = isWeaveOutOfLine;
 
         this.isLineEnable = contains(eventTypeArray, Event.Type.LINE);
         this.hasCallBefore = contains(eventTypeArray, Event.Type.CALL_BEFORE);
@@ -112,13 +154,59 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
         this.isCallEnable = hasCallBefore || hasCallReturn || hasCallThrows;
     }
 
+    @Override
+    public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+        this.targetClassVersion = version;
+        this.isTargetInterface = (access & ACC_INTERFACE) != 0;
+        // 桩方法是新增的private static方法，调用方已确认JVM允许重新形变时新增方法(JDK13+的HotSpot需要显式开启)
+        // 接口中的私有方法还要求类版本不低于Java9
+        this.isOutOfLine = isWeaveOutOfLine
+            && (!isTargetInterface || (version & 0xFFFF) >= V9);
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
     private boolean isMatchedBehavior(final String signCode) {
         return signCodes.contains(signCode);
     }
 
+    private boolean isMatchedCallSite(final String owner,
+        final String name,
+        final String desc) {
+        return null == callSiteFilter
+            || callSiteFilter.doCallSiteFilter(toJavaClassName(owner), name, desc);
+    }
+
+    // 获取转发桩方法名，并登记需要生成的桩方法
+    private String toForwardStubName(final org.objectweb.asm.commons.Method spyMethod) {
+        final String stubName = STUB_PREFIX + listenerId + "$" + spyMethod.getName();
+        forwardStubs.put(stubName, spyMethod);
+        return stubName;
+    }
+
+    // 转发桩方法的参数为Spy方法去掉末尾的namespace和listenerId
+    private static String toForwardStubDesc(final org.objectweb.asm.commons.Method spyMethod) {
+        final Type[] argumentTypes = spyMethod.getArgumentTypes();
+        return Type.getMethodDescriptor(spyMethod.getReturnType(), Arrays.copyOf(argumentTypes, argumentTypes.length - 2));
+    }
+
+    // 获取BEFORE桩方法名，并登记需要生成的桩方法
+    private String toBeforeStubName(final String name,
+        final String desc) {
+        final String stubName = STUB_PREFIX + listenerId + "$" + ASM_METHOD_Spy$spyMethodOnBefore.getName() + "$" + beforeStubs.size();
+        beforeStubs.add(new String[]{stubName, name, desc});
+        return stubName;
+    }
+
     private String getBehaviorSignCode(final String name,
         final String desc) {
-        final StringBuilder sb = new StringBuilder(256).append(targetJavaClassName).append("#").append(name).append("(");
+        return getBehaviorSignCode(targetJavaClassName, name, desc);
+    }
+
+    // 行为签名，与BehaviorStructure#getSignCode()一致
+    static String getBehaviorSignCode(final String javaClassName,
+        final String name,
+        final String desc) {
+        final StringBuilder sb = new StringBuilder(256).append(javaClassName).append("#").append(name).append("(");
 
         final Type[] methodTypes = Type.getMethodType(desc).getArgumentTypes();
         if (methodTypes.length != 0) {
@@ -136,6 +224,7 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
 
         final String signCode = getBehaviorSignCode(name, desc);
         if (!isMatchedBehavior(signCode)) {
+            // 必须直接返回ClassWriter的MethodVisitor，ASM才会原样拷贝方法字节码，不重新计算栈帧
             final MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
             logger.debug("non-rewrite method {} for listener[id={}];",
                 signCode,
@@ -168,11 +257,6 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                 private int newlocal = -1;
                 // 代码锁
                 private final CodeLock codeLockForTracing = new CallAsmCodeLock(this);
-
-                // 加载ClassLoader
-                private void loadClassLoader() {
-                    push(targetClassLoaderObjectID);
-                }
                 /**
                  * 流程控制
                  */
@@ -188,7 +272,7 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                                 dup();
                                 push(namespace);
                                 push(listenerId);
-                                loadClassLoader();
+                                loadClassLoader(targetJavaClassName, targetClassVersion);
                                 push(targetJavaClassName);
                                 push(name);
                                 push(desc);
@@ -221,6 +305,7 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnReturn);
                                 processControl(desc);
                                 returnValue();
+                                visitProcessControlSlowPaths();
                                 mark(endLabel);
                                 mv.visitLabel(startCatchBlock);
                                 visitTryCatchBlock(beginLabel, endLabel, startCatchBlock, ASM_TYPE_THROWABLE.getInternalName());
@@ -230,7 +315,7 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                                 push(namespace);
                                 push(listenerId);
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnThrows);
-                                processControl(desc);
+                                processControlInline(desc);
                                 loadLocal(newlocal);
                                 throwException();
                                 mv.visitLabel(endCatchBlock);
@@ -258,14 +343,41 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                 // 所以这里需要用一个标记为告知后续的代码编织，绕开super()和this()
                 private boolean isMethodEnter = false;
 
+                // 行覆盖位图的行号范围，不需要行覆盖时为null
+                private final int[] lineNumberRange = null == lineNumberRanges
+                    ? null
+                    : lineNumberRanges.get(name.concat(desc));
+
+                // 行覆盖位图的局部变量
+                private int lineCoverageLocal = -1;
+
+                // 共享出口：各返回点把返回值存入局部变量后跳到这里，RETURN钩子只织入一次
+                // 不共享出口的方法为null
+                private final Label sharedExitLabel = null != sharedExitMethods && sharedExitMethods.contains(name.concat(desc))
+                    ? new Label()
+                    : null;
+                private boolean isSharedExitUsed = false;
+
+                // 返回值的局部变量
+                private int returnValueLocal = -1;
+
                 // 代码锁
                 private final CodeLock codeLockForTracing = new CallAsmCodeLock(this);
 
+                // 调用Spy方法，out-of-line时改为调用桩方法，由桩方法补上namespace和listenerId
+                private void invokeSpy(final org.objectweb.asm.commons.Method spyMethod) {
+                    if (isOutOfLine) {
+                        invokeStub(toForwardStubName(spyMethod), toForwardStubDesc(spyMethod));
+                    } else {
+                        push(namespace);
+                        push(listenerId);
+                        invokeStatic(ASM_TYPE_SPY, spyMethod);
+                    }
+                }
 
-
-                // 加载ClassLoader
-                private void loadClassLoader() {
-                    push(targetClassLoaderObjectID);
+                private void invokeStub(final String stubName,
+                                        final String stubDesc) {
+                    mv.visitMethodInsn(INVOKESTATIC, toInternalClassName(targetJavaClassName), stubName, stubDesc, isTargetInterface);
                 }
 
                 @Override
@@ -273,21 +385,38 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                     codeLockForTracing.lock(new CodeLock.Block() {
                         @Override
                         public void code() {
+                            // 位图局部变量必须在try块之前初始化，异常处理块中才能保证它已经初始化
+                            if (null != lineNumberRange) {
+                                pushNull();
+                                lineCoverageLocal = newLocal(ASM_TYPE_LONG_ARRAY);
+                                storeLocal(lineCoverageLocal);
+                            }
                             mark(beginLabel);
                             loadArgArray();
                             dup();
-                            push(namespace);
-                            push(listenerId);
-                            loadClassLoader();
-                            push(targetJavaClassName);
-                            push(name);
-                            push(desc);
-                            loadThisOrPushNullIfIsStatic();
-                            invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnBefore);
+                            if (isOutOfLine) {
+                                loadThisOrPushNullIfIsStatic();
+                                invokeStub(toBeforeStubName(name, desc), BEFORE_STUB_DESC);
+                            } else {
+                                push(namespace);
+                                push(listenerId);
+                                loadClassLoader(targetJavaClassName, targetClassVersion);
+                                push(targetJavaClassName);
+                                push(name);
+                                push(desc);
+                                loadThisOrPushNullIfIsStatic();
+                                invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnBefore);
+                            }
                             swap();
                             storeArgArray();
                             pop();
                             processControl(desc);
+                            // 位图由调用过程按调用深度复用，不再每次调用都分配
+                            if (null != lineNumberRange) {
+                                push(((lineNumberRange[1] - lineNumberRange[0]) >>> 6) + 1);
+                                invokeSpy(ASM_METHOD_Spy$spyMethodOnLineCoverageBegin);
+                                storeLocal(lineCoverageLocal);
+                            }
                             isMethodEnter = true;
                         }
                     });
@@ -342,10 +471,9 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
+                                deliverLineCoverage();
                                 loadReturn(opcode);
-                                push(namespace);
-                                push(listenerId);
-                                invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnReturn);
+                                invokeSpy(ASM_METHOD_Spy$spyMethodOnReturn);
                                 processControl(desc);
                             }
                         });
@@ -354,6 +482,10 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
 
                 @Override
                 public void visitMaxs(int maxStack, int maxLocals) {
+                    if (isSharedExitUsed) {
+                        visitSharedExit();
+                    }
+                    visitProcessControlSlowPaths();
                     mark(endLabel);
                     mv.visitLabel(startCatchBlock);
                     visitTryCatchBlock(beginLabel, endLabel, startCatchBlock, ASM_TYPE_THROWABLE.getInternalName());
@@ -363,11 +495,10 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         public void code() {
                             newlocal = newLocal(ASM_TYPE_THROWABLE);
                             storeLocal(newlocal);
+                            deliverLineCoverage();
                             loadLocal(newlocal);
-                            push(namespace);
-                            push(listenerId);
-                            invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnThrows);
-                            processControl(desc);
+                            invokeSpy(ASM_METHOD_Spy$spyMethodOnThrows);
+                            processControlInline(desc);
                             loadLocal(newlocal);
                         }
                     });
@@ -377,19 +508,79 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                     super.visitMaxs(maxStack, maxLocals);
                 }
 
+                // 返回点：返回值存入局部变量，跳转到共享出口
+                private void jumpToSharedExit(final int opcode) {
+                    if (RETURN != opcode) {
+                        if (returnValueLocal < 0) {
+                            returnValueLocal = newLocal(Type.getReturnType(methodDesc));
+                        }
+                        storeLocal(returnValueLocal);
+                    }
+                    goTo(sharedExitLabel);
+                    isSharedExitUsed = true;
+                }
+
+                // 共享出口：取出返回值，织入RETURN钩子后返回
+                private void visitSharedExit() {
+                    final Type returnType = Type.getReturnType(methodDesc);
+                    final int opcode = returnType.getOpcode(IRETURN);
+                    mark(sharedExitLabel);
+                    if (returnValueLocal >= 0) {
+                        loadLocal(returnValueLocal);
+                        // 局部变量的类型由各返回点的返回值合并推导，可能比声明的返回类型宽，需要转回来
+                        if ((returnType.getSort() == Type.OBJECT || returnType.getSort() == Type.ARRAY)
+                            && !ASM_TYPE_OBJECT.equals(returnType)) {
+                            checkCast(returnType);
+                        }
+                    }
+                    onMethodExit(opcode);
+                    mv.visitInsn(opcode);
+                }
+
+                // 在返回或抛出异常之前，把本次调用的行覆盖位图一次性送出
+                private void deliverLineCoverage() {
+                    if (lineCoverageLocal < 0) {
+                        return;
+                    }
+                    loadLocal(lineCoverageLocal);
+                    push(lineNumberRange[0]);
+                    invokeSpy(ASM_METHOD_Spy$spyMethodOnLineCoverage);
+                }
+
+                // 在位图上标记当前行，等价于 bitmap[index >>> 6] |= 1L << (index & 63)
+                private void markLineCovered(final int lineNumber) {
+                    final int index = lineNumber - lineNumberRange[0];
+                    loadLocal(lineCoverageLocal);
+                    push(index >>> 6);
+                    dup2();
+                    arrayLoad(Type.LONG_TYPE);
+                    push(1L << (index & 63));
+                    math(OR, Type.LONG_TYPE);
+                    arrayStore(Type.LONG_TYPE);
+                }
+
                 // 用于tracing的当前行号
                 private int tracingCurrentLineNumber = -1;
 
                 @Override
                 public void visitLineNumber(final int lineNumber, Label label) {
+                    if (isMethodEnter
+                        && lineCoverageLocal >= 0
+                        && lineNumber >= lineNumberRange[0]
+                        && lineNumber <= lineNumberRange[1]) {
+                        codeLockForTracing.lock(new CodeLock.Block() {
+                            @Override
+                            public void code() {
+                                markLineCovered(lineNumber);
+                            }
+                        });
+                    }
                     if (isMethodEnter && isLineEnable) {
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
                                 push(lineNumber);
-                                push(namespace);
-                                push(listenerId);
-                                invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnLine);
+                                invokeSpy(ASM_METHOD_Spy$spyMethodOnLine);
                             }
                         });
                     }
@@ -399,7 +590,11 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
 
                 @Override
                 public void visitInsn(int opcode) {
-                    super.visitInsn(opcode);
+                    if (null != sharedExitLabel && opcode >= IRETURN && opcode <= RETURN) {
+                        jumpToSharedExit(opcode);
+                    } else {
+                        super.visitInsn(opcode);
+                    }
                     codeLockForTracing.code(opcode);
                 }
 
@@ -417,18 +612,27 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         return;
                     }
 
+                    // 没有通过调用点过滤的调用保持原样
+                    if (!isMatchedCallSite(owner, name, desc)) {
+                        super.visitMethodInsn(opcode, owner, name, desc, itf);
+                        return;
+                    }
+
                     if (hasCallBefore) {
+                        // 调用点描述在织入时注册，织入代码只需要传递调用点ID
+                        final int callSiteId = CallSiteRegistry.instance.register(
+                            listenerId,
+                            tracingCurrentLineNumber,
+                            toJavaClassName(owner),
+                            name,
+                            desc
+                        );
                         // 方法调用前通知
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
-                                push(tracingCurrentLineNumber);
-                                push(toJavaClassName(owner));
-                                push(name);
-                                push(desc);
-                                push(namespace);
-                                push(listenerId);
-                                invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallBefore);
+                                push(callSiteId);
+                                invokeSpy(ASM_METHOD_Spy$spyMethodOnCallBefore);
                             }
                         });
                     }
@@ -440,9 +644,7 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
-                                push(namespace);
-                                push(listenerId);
-                                invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallReturn);
+                                invokeSpy(ASM_METHOD_Spy$spyMethodOnCallReturn);
                             }
                         });
                         return;
@@ -466,9 +668,7 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
-                                push(namespace);
-                                push(listenerId);
-                                invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallReturn);
+                                invokeSpy(ASM_METHOD_Spy$spyMethodOnCallReturn);
                             }
                         });
                     }
@@ -483,11 +683,7 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         @Override
                         public void code() {
                             dup();
-                            invokeVirtual(ASM_TYPE_OBJECT, ASM_METHOD_Object$getClass);
-                            invokeVirtual(ASM_TYPE_CLASS, ASM_METHOD_Class$getName);
-                            push(namespace);
-                            push(listenerId);
-                            invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallThrows);
+                            invokeSpy(ASM_METHOD_Spy$spyMethodOnCallThrows);
                         }
                     });
 
@@ -537,6 +733,44 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                 mv.visitEnd();
             }
         }
+        visitStubMethods();
         super.visitEnd();
     }
+
+    // 生成桩方法
+    // JDK13之前的HotSpot在重新形变时只允许新增和删除private static/final方法，
+    // JDK13起还需要-XX:+AllowRedefinitionToAddDeleteMethods，不满足时不会走到这里
+    private void visitStubMethods() {
+        for (final String[] beforeStub : beforeStubs) {
+            final GeneratorAdapter ga = newStubMethod(beforeStub[0], BEFORE_STUB_DESC);
+            ga.loadArg(0);
+            ga.push(namespace);
+            ga.push(listenerId);
+            ReWriteMethod.loadClassLoader(ga, targetJavaClassName, targetClassVersion);
+            ga.push(targetJavaClassName);
+            ga.push(beforeStub[1]);
+            ga.push(beforeStub[2]);
+            ga.loadArg(1);
+            ga.invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnBefore);
+            ga.returnValue();
+            ga.endMethod();
+        }
+        for (final Map.Entry<String, org.objectweb.asm.commons.Method> entry : forwardStubs.entrySet()) {
+            final GeneratorAdapter ga = newStubMethod(entry.getKey(), toForwardStubDesc(entry.getValue()));
+            ga.loadArgs();
+            ga.push(namespace);
+            ga.push(listenerId);
+            ga.invokeStatic(ASM_TYPE_SPY, entry.getValue());
+            ga.returnValue();
+            ga.endMethod();
+        }
+    }
+
+    private GeneratorAdapter newStubMethod(final String name,
+        final String desc) {
+        final int access = ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC;
+        final GeneratorAdapter ga = new GeneratorAdapter(cv.visitMethod(access, name, desc, null, null), access, name, desc);
+        ga.visitCode();
+        return ga;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.jrasp.core.enhance.weaver.asm;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+import static org.objectweb.asm.Opcodes.ASM7;
+
+/**
+ * 方法行号范围扫描
+ * <p>
+ * 行覆盖位图需要在方法入口处一次分配好，织入时还没有看到方法的行号表，
+ * 所以在织入之前先扫描一遍，得到每个方法的[起始行号,结束行号]
+ * </p>
+ * <p>
+ * 范围最多{@link #MAX_LINE_NUMBER_SPAN}行，超出的行不做行覆盖：
+ * Kotlin内联函数等经过SMAP映射的行号可能远大于源文件实际行数，
+ * 不限制的话每次调用都要分配一个很大的位图
+ * </p>
+ */
+public class LineNumberRangeScanner extends ClassVisitor {
+
+    // 行覆盖范围的最大行数，对应位图最多16个long
+    static final int MAX_LINE_NUMBER_SPAN = 1024;
+
+    // 方法名+方法描述 : [起始行号,结束行号]
+    private final Map<String, int[]> lineNumberRanges = new HashMap<String, int[]>();
+
+    private LineNumberRangeScanner() {
+        super(ASM7);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(final int access,
+                                     final String name,
+                                     final String desc,
+                                     final String signature,
+                                     final String[] exceptions) {
+        return new MethodVisitor(ASM7) {
+
+            private int firstLineNumber = Integer.MAX_VALUE;
+            private int lastLineNumber = Integer.MIN_VALUE;
+
+            @Override
+            public void visitLineNumber(final int line, final Label start) {
+                firstLineNumber = Math.min(firstLineNumber, line);
+                lastLineNumber = Math.max(lastLineNumber, line);
+            }
+
+            @Override
+            public void visitEnd() {
+                // 没有行号表的方法(如编译时去掉了调试信息)不做行覆盖
+                if (firstLineNumber <= lastLineNumber) {
+                    lineNumberRanges.put(name.concat(desc), new int[]{
+                            firstLineNumber,
+                            Math.min(lastLineNumber, firstLineNumber + MAX_LINE_NUMBER_SPAN - 1)
+                    });
+                }
+            }
+
+        };
+    }
+
+    /**
+     * 扫描类中各方法的行号范围
+     *
+     * @param cr ClassReader
+     * @return 方法名+方法描述 : [起始行号,结束行号]，结束行号已按最大行数截断
+     */
+    public static Map<String, int[]> scan(final ClassReader cr) {
+        final LineNumberRangeScanner scanner = new LineNumberRangeScanner();
+        cr.accept(scanner, SKIP_FRAMES);
+        return scanner.lineNumberRanges;
+    }
+
+}
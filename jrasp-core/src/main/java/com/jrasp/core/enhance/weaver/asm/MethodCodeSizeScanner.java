@@ -0,0 +1,74 @@
+package com.jrasp.core.enhance.weaver.asm;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 方法字节码长度扫描
+ * <p>
+ * ASM的访问者接口拿不到Code属性的长度，这里直接按类文件格式遍历方法表，
+ * 只读取方法名、方法描述和Code属性中的code_length，不解析任何指令
+ * </p>
+ */
+public class MethodCodeSizeScanner {
+
+    private MethodCodeSizeScanner() {
+
+    }
+
+    /**
+     * 扫描类中各方法的字节码长度
+     *
+     * @param cr ClassReader
+     * @return 方法名+方法描述 : 字节码长度，没有方法体的方法(abstract/native)不在其中
+     */
+    public static Map<String, Integer> scan(final ClassReader cr) {
+        final Map<String, Integer> codeSizes = new HashMap<String, Integer>();
+        final char[] charBuffer = new char[cr.getMaxStringLength()];
+
+        // 跳过 access_flags | this_class | super_class
+        int offset = cr.header + 6;
+
+        // 跳过 interfaces
+        offset += 2 + (cr.readUnsignedShort(offset) << 1);
+
+        // 跳过 fields
+        int fieldCount = cr.readUnsignedShort(offset);
+        offset += 2;
+        while (fieldCount-- > 0) {
+            offset = skipAttributes(cr, offset + 6);
+        }
+
+        // methods
+        int methodCount = cr.readUnsignedShort(offset);
+        offset += 2;
+        while (methodCount-- > 0) {
+            final String name = cr.readUTF8(offset + 2, charBuffer);
+            final String desc = cr.readUTF8(offset + 4, charBuffer);
+            int attributeCount = cr.readUnsignedShort(offset + 6);
+            offset += 8;
+            while (attributeCount-- > 0) {
+                final int length = cr.readInt(offset + 2);
+                if ("Code".equals(cr.readUTF8(offset, charBuffer))) {
+                    // Code属性：max_stack(2) | max_locals(2) | code_length(4)
+                    codeSizes.put(name.concat(desc), cr.readInt(offset + 10));
+                }
+                offset += 6 + length;
+            }
+        }
+        return codeSizes;
+    }
+
+    // 跳过属性表，返回属性表之后的偏移
+    private static int skipAttributes(final ClassReader cr, int offset) {
+        int attributeCount = cr.readUnsignedShort(offset);
+        offset += 2;
+        while (attributeCount-- > 0) {
+            offset += 6 + cr.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+}
@@ -5,13 +5,21 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.GeneratorAdapter;
 
 import java.com.jrasp.spy.Spy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jrasp.core.util.RaspStringUtils.toInternalClassName;
 
 public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, AsmMethods {
 
     private final Type[] argumentTypeArray;
 
+    // 等待生成的流程控制慢路径
+    private final List<ProcessControlSlowPath> processControlSlowPaths = new ArrayList<ProcessControlSlowPath>();
+
     /**
      * Creates a new {@link AdviceAdapter}.
      *
@@ -54,6 +62,40 @@ public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, A
         }
     }
 
+    /**
+     * 加载目标类的ClassLoader
+     * <p>
+     * 直接从目标类自身取得ClassLoader，无需每次调用都经过ObjectIDs查找；
+     * JDK1.5之前的字节码不支持LDC类常量，只能通过Class.forName()获取目标类
+     * </p>
+     *
+     * @param ga                  方法生成器
+     * @param targetJavaClassName 目标类名
+     * @param targetClassVersion  目标类的字节码版本
+     */
+    static void loadClassLoader(final GeneratorAdapter ga,
+                                final String targetJavaClassName,
+                                final int targetClassVersion) {
+        if ((targetClassVersion & 0xFFFF) >= V1_5) {
+            ga.push(Type.getObjectType(toInternalClassName(targetJavaClassName)));
+        } else {
+            ga.push(targetJavaClassName);
+            ga.invokeStatic(ASM_TYPE_CLASS, ASM_METHOD_Class$forName);
+        }
+        ga.invokeVirtual(ASM_TYPE_CLASS, ASM_METHOD_Class$getClassLoader);
+    }
+
+    /**
+     * 加载目标类的ClassLoader
+     *
+     * @param targetJavaClassName 目标类名
+     * @param targetClassVersion  目标类的字节码版本
+     */
+    final protected void loadClassLoader(final String targetJavaClassName,
+                                         final int targetClassVersion) {
+        loadClassLoader(this, targetJavaClassName, targetClassVersion);
+    }
+
     final protected void checkCastReturn(Type returnType) {
         final int sort = returnType.getSort();
         switch (sort) {
@@ -142,8 +184,60 @@ public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, A
         }
     }
 
+    /**
+     * 流程控制
+     * <p>
+     * Spy在不需要改变流程时返回null，织入点只做一次判空；
+     * 非空时跳到慢路径上按状态立即返回或抛出异常。
+     * 慢路径不放在织入点上，由{@link #visitProcessControlSlowPaths()}集中生成在方法末尾
+     * </p>
+     *
+     * @param desc 方法描述
+     */
     final protected void processControl(String desc) {
+        final Label slowPathLabel = new Label();
         final Label finishLabel = new Label();
+        dup();
+        ifNonNull(slowPathLabel);
+        mark(finishLabel);
+        pop();
+        processControlSlowPaths.add(new ProcessControlSlowPath(slowPathLabel, finishLabel, desc));
+    }
+
+    /**
+     * 流程控制，慢路径直接生成在织入点上
+     * <p>
+     * 用于异常处理块中的织入点：慢路径如果移到方法末尾，会落进别的try块的范围
+     * </p>
+     *
+     * @param desc 方法描述
+     */
+    final protected void processControlInline(String desc) {
+        final Label finishLabel = new Label();
+        dup();
+        ifNull(finishLabel);
+        processControlSlowPath(desc, finishLabel);
+        mark(finishLabel);
+        pop();
+    }
+
+    /**
+     * 生成所有织入点的流程控制慢路径
+     * <p>
+     * 必须在方法原有代码之后、织入的try块结束之前调用，
+     * 慢路径中抛出的异常和在织入点上抛出的一样会被织入的异常处理块捕获
+     * </p>
+     */
+    final protected void visitProcessControlSlowPaths() {
+        for (final ProcessControlSlowPath slowPath : processControlSlowPaths) {
+            mark(slowPath.slowPathLabel);
+            processControlSlowPath(slowPath.desc, slowPath.finishLabel);
+        }
+        processControlSlowPaths.clear();
+    }
+
+    // 栈顶为Ret，按状态返回或抛出异常；状态为NONE时(兼容旧版本Spy返回的RET_NONE)带着Ret跳回finishLabel
+    private void processControlSlowPath(final String desc, final Label finishLabel) {
         final Label returnLabel = new Label();
         final Label throwsLabel = new Label();
         dup();
@@ -158,13 +252,29 @@ public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, A
         pop();
         visitFieldInsn(GETFIELD, ASM_TYPE_SPY_RET, "respond", ASM_TYPE_OBJECT);
         checkCastReturn(Type.getReturnType(desc));
-        goTo(finishLabel);
         mark(throwsLabel);
         visitFieldInsn(GETFIELD, ASM_TYPE_SPY_RET, "respond", ASM_TYPE_OBJECT);
         checkCast(ASM_TYPE_THROWABLE);
         throwException();
-        mark(finishLabel);
-        pop();
+    }
+
+    /**
+     * 流程控制慢路径
+     */
+    private static class ProcessControlSlowPath {
+
+        private final Label slowPathLabel;
+        private final Label finishLabel;
+        private final String desc;
+
+        ProcessControlSlowPath(final Label slowPathLabel,
+                               final Label finishLabel,
+                               final String desc) {
+            this.slowPathLabel = slowPathLabel;
+            this.finishLabel = finishLabel;
+            this.desc = desc;
+        }
+
     }
 
 }
@@ -0,0 +1,119 @@
+package com.jrasp.core.enhance.weaver.asm;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AnalyzerAdapter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.jrasp.core.util.RaspStringUtils.toJavaClassName;
+import static org.objectweb.asm.ClassReader.EXPAND_FRAMES;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * 方法返回点扫描
+ * <p>
+ * 返回点较多的方法，织入时把每个返回点改为跳转到同一个出口，RETURN钩子在出口处只织入一次。
+ * 跳转到同一个出口要求每个返回点上的操作数栈里只有返回值，织入时还不知道栈的状态，
+ * 所以在织入之前先扫描一遍，找出所有返回点都满足条件的方法；
+ * 只扫描需要织入的方法，其余方法原样拷贝，不需要推导栈帧
+ * </p>
+ * <p>
+ * 栈的状态依赖栈帧推导，没有栈帧的旧版本字节码(JDK1.6之前)不会共享出口
+ * </p>
+ */
+public class ReturnSiteScanner extends ClassVisitor {
+
+    // 返回点不少于该数量的方法才共享出口，只有一个返回点时共享出口反而多了一次存取和跳转
+    private static final int MIN_RETURN_SITES = 2;
+
+    // 需要织入的行为签名
+    private final Set<String> signCodes;
+
+    // 方法名+方法描述
+    private final Set<String> sharedExitMethods = new HashSet<String>();
+
+    private String owner;
+    private String javaClassName;
+
+    private ReturnSiteScanner(final Set<String> signCodes) {
+        super(ASM7);
+        this.signCodes = signCodes;
+    }
+
+    @Override
+    public void visit(final int version,
+                      final int access,
+                      final String name,
+                      final String signature,
+                      final String superName,
+                      final String[] interfaces) {
+        this.owner = name;
+        this.javaClassName = toJavaClassName(name);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(final int access,
+                                     final String name,
+                                     final String desc,
+                                     final String signature,
+                                     final String[] exceptions) {
+        if ((access & (ACC_ABSTRACT | ACC_NATIVE)) != 0
+                || !signCodes.contains(EventWeaver.getBehaviorSignCode(javaClassName, name, desc))) {
+            return null;
+        }
+        final int returnSize = Type.getReturnType(desc).getSize();
+        return new AnalyzerAdapter(ASM7, owner, access, name, desc, null) {
+
+            private int returnSiteCount;
+            private boolean isSharable = true;
+
+            @Override
+            public void visitInsn(final int opcode) {
+                if (opcode >= IRETURN && opcode <= RETURN) {
+                    returnSiteCount++;
+                    // 不可达(没有栈帧可推导)或栈中还有返回值以外的数据
+                    if (null == stack || stack.size() != returnSize) {
+                        isSharable = false;
+                    }
+                }
+                super.visitInsn(opcode);
+            }
+
+            @Override
+            public void visitEnd() {
+                if (isSharable && returnSiteCount >= MIN_RETURN_SITES) {
+                    sharedExitMethods.add(name.concat(desc));
+                }
+            }
+
+        };
+    }
+
+    /**
+     * 扫描类中可以共享出口的方法
+     *
+     * @param cr        ClassReader
+     * @param signCodes 需要织入的行为签名，只扫描这些方法
+     * @return 方法名+方法描述，扫描失败时返回空集合
+     */
+    public static Set<String> scan(final ClassReader cr,
+                                   final Set<String> signCodes) {
+        if (null == signCodes || signCodes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final ReturnSiteScanner scanner = new ReturnSiteScanner(signCodes);
+        try {
+            cr.accept(scanner, EXPAND_FRAMES);
+        } catch (Throwable cause) {
+            // 推导不了栈状态的类(如包含JSR/RET)不共享出口，照常逐个返回点织入
+            return Collections.emptySet();
+        }
+        return scanner.sharedExitMethods;
+    }
+
+}
@@ -2,6 +2,7 @@ package com.jrasp.core.manager.impl;
 
 import com.jrasp.core.util.ObjectIDs;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -9,10 +10,10 @@ import java.util.Set;
 public class AffectStatistic {
 
     // 影响类去重码集合
-    private final Set<String> affectClassUniqueSet = new HashSet<String>();
+    private final Set<String> affectClassUniqueSet = Collections.synchronizedSet(new HashSet<String>());
 
     // 影响方法去重码集合
-    private final Set<String> affectMethodUniqueSet = new HashSet<String>();
+    private final Set<String> affectMethodUniqueSet = Collections.synchronizedSet(new HashSet<String>());
 
     // 计算唯一编码
     private String computeUniqueCode(final ClassLoader loader, final String javaClassName) {
@@ -73,6 +74,18 @@ public class AffectStatistic {
     }
 
 
+    /**
+     * 判断类是否被影响过
+     *
+     * @param loader            加载的ClassLoader
+     * @param internalClassName 类名
+     * @return TRUE:被影响过;FALSE:未被影响过
+     */
+    public boolean isAffected(final ClassLoader loader,
+                              final String internalClassName) {
+        return affectClassUniqueSet.contains(computeUniqueCode(loader, internalClassName));
+    }
+
     /**
      * 获取影响类数量
      *
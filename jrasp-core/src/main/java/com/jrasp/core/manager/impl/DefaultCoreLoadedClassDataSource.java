@@ -8,11 +8,14 @@ import com.jrasp.core.util.RaspProtector;
 import com.jrasp.core.util.RaspStringUtils;
 import com.jrasp.core.util.matcher.ExtFilterMatcher;
 import com.jrasp.core.util.matcher.Matcher;
+import com.jrasp.core.util.matcher.MatchingResult;
 import com.jrasp.core.util.matcher.UnsupportedMatcher;
 import com.jrasp.core.util.matcher.structure.ClassStructureFactory;
 
 import java.lang.instrument.Instrumentation;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.jrasp.api.filter.ExtFilter.ExtFilterFactory.make;
 import static com.jrasp.core.log.AgentLogIdConstant.DEFAULT_CORE_LOADED_CLASS_DATA_SOURCE_LOG_ID;
@@ -24,10 +27,62 @@ public class DefaultCoreLoadedClassDataSource implements CoreLoadedClassDataSour
     private final Instrumentation inst;
     private final boolean isEnableUnsafe;
 
+    // 扫描并行度上限
+    private final int scanParallelism;
+
+    // 扫描结果标记
+    private static final byte UNMATCHED = 0;
+    private static final byte MATCHED = 1;
+    private static final byte MATCHED_EXPLICIT = 2;
+
+    // 已加载类不超过该数量时不并行扫描
+    private static final int SCAN_SPLIT_THRESHOLD = 512;
+
+    // 扫描线程空闲多久后回收(秒)，没有扫描时不保留线程
+    private static final long SCAN_THREAD_KEEP_ALIVE_SECONDS = 60L;
+
+    // 扫描线程池，并行度不大于1时为null
+    private final ThreadPoolExecutor scanExecutor;
+
     public DefaultCoreLoadedClassDataSource(final Instrumentation inst,
-                                            final boolean isEnableUnsafe) {
+                                            final boolean isEnableUnsafe,
+                                            final int scanParallelism) {
         this.inst = inst;
         this.isEnableUnsafe = isEnableUnsafe;
+        this.scanParallelism = scanParallelism;
+        this.scanExecutor = scanParallelism > 1
+                ? newScanExecutor(scanParallelism)
+                : null;
+    }
+
+    private static ThreadPoolExecutor newScanExecutor(final int scanParallelism) {
+        final AtomicInteger threadIndex = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                scanParallelism,
+                scanParallelism,
+                SCAN_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "jrasp-class-scan-" + threadIndex.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 关闭扫描线程池
+     */
+    public void destroy() {
+        if (null != scanExecutor) {
+            scanExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -80,42 +135,22 @@ public class DefaultCoreLoadedClassDataSource implements CoreLoadedClassDataSour
                 return classes;
             }
 
-            final Iterator<Class<?>> itForLoaded = iteratorForLoadedClasses();
-            while (itForLoaded.hasNext()) {
-                final Class<?> clazz = itForLoaded.next();
-
-                // 过滤掉rasp自带的类
-                if (isComeFromRaspFamily(RaspStringUtils.toInternalClassName(clazz.getName()), clazz.getClassLoader())) {
-                    continue;
-                }
+            final Class<?>[] loaded = inst.getAllLoadedClasses();
+            final byte[] matchedFlags = new byte[loaded.length];
+            if (null == scanExecutor
+                    || loaded.length <= SCAN_SPLIT_THRESHOLD) {
+                scan(loaded, matchedFlags, 0, loaded.length, matcher, isRemoveUnsupported);
+            } else {
+                parallelScan(loaded, matchedFlags, matcher, isRemoveUnsupported);
+            }
 
-                // 过滤掉对于JVM认为不可修改的类
-                if (isRemoveUnsupported
-                        && !inst.isModifiableClass(clazz)) {
-                    // logger.debug("remove from findForReTransform, because class:{} is unModifiable", clazz.getName());
-                    continue;
-                }
-                try {
-                    if (isRemoveUnsupported) {
-                        if (new UnsupportedMatcher(clazz.getClassLoader(), isEnableUnsafe)
-                                .and(matcher)
-                                .matching(ClassStructureFactory.createClassStructure(clazz))
-                                .isMatched()) {
-                            classes.add(clazz);
-                        }
-                    } else {
-                        if (matcher.matching(ClassStructureFactory.createClassStructure(clazz)).isMatched()) {
-                            classes.add(clazz);
-                        }
+            // 精确指定类名的类排在前面，其次是通配/子类匹配上的类
+            // 同一优先级内按getAllLoadedClasses()的顺序收集，保证和单线程扫描的顺序一致，进度上报才是确定的
+            for (final byte flag : new byte[]{MATCHED_EXPLICIT, MATCHED}) {
+                for (int index = 0; index < loaded.length; index++) {
+                    if (matchedFlags[index] == flag) {
+                        classes.add(loaded[index]);
                     }
-
-                } catch (Throwable cause) {
-                    // 在这里可能会遇到非常坑爹的模块卸载错误
-                    // 当一个URLClassLoader被动态关闭之后，但JVM已经加载的类并不知情（因为没有GC）
-                    // 所以当尝试获取这个类更多详细信息的时候会引起关联类的ClassNotFoundException等未知的错误（取决于底层ClassLoader的实现）
-                    // 这里没有办法穷举出所有的异常情况，所以catch Throwable来完成异常容灾处理
-                    // 当解析类出现异常的时候，直接简单粗暴的认为根本没有这个类就好了
-                    logger.debug(DEFAULT_CORE_LOADED_CLASS_DATA_SOURCE_LOG_ID,"remove from findForReTransform, because loading class:{} occur an exception", clazz.getName(), cause);
                 }
             }
             return classes;
@@ -126,6 +161,131 @@ public class DefaultCoreLoadedClassDataSource implements CoreLoadedClassDataSour
 
     }
 
+    // 扫描[from,to)区间的类，匹配结果标记写入matchedFlags对应的下标
+    private void scan(final Class<?>[] loaded,
+                      final byte[] matchedFlags,
+                      final int from,
+                      final int to,
+                      final Matcher matcher,
+                      final boolean isRemoveUnsupported) {
+        RaspProtector.instance.enterProtecting();
+        try {
+            for (int index = from; index < to; index++) {
+                matchedFlags[index] = matching(loaded[index], matcher, isRemoveUnsupported);
+            }
+        } finally {
+            RaspProtector.instance.exitProtecting();
+        }
+    }
+
+    private byte matching(final Class<?> clazz,
+                          final Matcher matcher,
+                          final boolean isRemoveUnsupported) {
+        try {
+
+            // 过滤掉rasp自带的类
+            if (isComeFromRaspFamily(RaspStringUtils.toInternalClassName(clazz.getName()), clazz.getClassLoader())) {
+                return UNMATCHED;
+            }
+
+            // 过滤掉对于JVM认为不可修改的类
+            if (isRemoveUnsupported
+                    && !inst.isModifiableClass(clazz)) {
+                // logger.debug("remove from findForReTransform, because class:{} is unModifiable", clazz.getName());
+                return UNMATCHED;
+            }
+
+            final MatchingResult result = isRemoveUnsupported
+                    ? new UnsupportedMatcher(clazz.getClassLoader(), isEnableUnsafe)
+                            .and(matcher)
+                            .matching(ClassStructureFactory.createClassStructure(clazz))
+                    : matcher.matching(ClassStructureFactory.createClassStructure(clazz));
+            if (!result.isMatched()) {
+                return UNMATCHED;
+            }
+            return result.isExplicit()
+                    ? MATCHED_EXPLICIT
+                    : MATCHED;
+
+        } catch (Throwable cause) {
+            // 在这里可能会遇到非常坑爹的模块卸载错误
+            // 当一个URLClassLoader被动态关闭之后，但JVM已经加载的类并不知情（因为没有GC）
+            // 所以当尝试获取这个类更多详细信息的时候会引起关联类的ClassNotFoundException等未知的错误（取决于底层ClassLoader的实现）
+            // 这里没有办法穷举出所有的异常情况，所以catch Throwable来完成异常容灾处理
+            // 当解析类出现异常的时候，直接简单粗暴的认为根本没有这个类就好了
+            logger.debug(DEFAULT_CORE_LOADED_CLASS_DATA_SOURCE_LOG_ID,"remove from findForReTransform, because loading class:{} occur an exception", clazz.getName(), cause);
+            return UNMATCHED;
+        }
+    }
+
+    // 把已加载类切成scanParallelism段并行扫描，每个下标只会被一段写入
+    // 线程池不可用或某一段扫描失败时，由当前线程补扫，结果不受影响
+    private void parallelScan(final Class<?>[] loaded,
+                              final byte[] matchedFlags,
+                              final Matcher matcher,
+                              final boolean isRemoveUnsupported) {
+        final int segmentSize = (loaded.length + scanParallelism - 1) / scanParallelism;
+        final List<ScanTask> tasks = new ArrayList<ScanTask>(scanParallelism);
+        for (int from = 0; from < loaded.length; from += segmentSize) {
+            tasks.add(new ScanTask(loaded, matchedFlags, from, Math.min(from + segmentSize, loaded.length), matcher, isRemoveUnsupported));
+        }
+
+        final List<Future<Void>> futures;
+        try {
+            futures = scanExecutor.invokeAll(tasks);
+        } catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            scan(loaded, matchedFlags, 0, loaded.length, matcher, isRemoveUnsupported);
+            return;
+        } catch (RejectedExecutionException cause) {
+            scan(loaded, matchedFlags, 0, loaded.length, matcher, isRemoveUnsupported);
+            return;
+        }
+
+        for (int index = 0; index < futures.size(); index++) {
+            try {
+                futures.get(index).get();
+            } catch (Throwable cause) {
+                final ScanTask task = tasks.get(index);
+                scan(loaded, matchedFlags, task.from, task.to, matcher, isRemoveUnsupported);
+            }
+        }
+    }
+
+    /**
+     * 已加载类的分段扫描任务
+     */
+    private class ScanTask implements Callable<Void> {
+
+        private final Class<?>[] loaded;
+        private final byte[] matchedFlags;
+        private final int from;
+        private final int to;
+        private final Matcher matcher;
+        private final boolean isRemoveUnsupported;
+
+        ScanTask(final Class<?>[] loaded,
+                 final byte[] matchedFlags,
+                 final int from,
+                 final int to,
+                 final Matcher matcher,
+                 final boolean isRemoveUnsupported) {
+            this.loaded = loaded;
+            this.matchedFlags = matchedFlags;
+            this.from = from;
+            this.to = to;
+            this.matcher = matcher;
+            this.isRemoveUnsupported = isRemoveUnsupported;
+        }
+
+        @Override
+        public Void call() {
+            scan(loaded, matchedFlags, from, to, matcher, isRemoveUnsupported);
+            return null;
+        }
+
+    }
+
 
     /**
      * 根据过滤器搜索出匹配的类集合
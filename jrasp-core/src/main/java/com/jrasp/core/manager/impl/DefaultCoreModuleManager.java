@@ -13,6 +13,7 @@ import com.jrasp.core.CoreModule;
 import com.jrasp.core.CoreModule.ReleaseResource;
 import com.jrasp.core.algorithm.DefaultAlgorithmManager;
 import com.jrasp.core.classloader.ModuleJarClassLoader;
+import com.jrasp.core.enhance.WovenSizeStatistic;
 import com.jrasp.core.enhance.weaver.EventListenerHandler;
 import com.jrasp.core.enhance.weaver.EventProcessor;
 import com.jrasp.core.json.JsonImpl;
@@ -21,9 +22,12 @@ import com.jrasp.core.manager.CoreLoadedClassDataSource;
 import com.jrasp.core.manager.CoreModuleManager;
 import com.jrasp.core.manager.ProviderManager;
 import com.jrasp.core.manager.impl.ModuleLibLoader.ModuleJarLoadCallback;
+import com.jrasp.core.util.PlatformDependentUtil;
 import com.jrasp.core.util.RaspProtector;
 import com.jrasp.core.util.RaspReflectUtils;
 import com.jrasp.core.util.ThreadUtil;
+import com.jrasp.core.util.matcher.GroupMatcher;
+import com.jrasp.core.util.matcher.Matcher;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 
@@ -34,6 +38,10 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import static com.jrasp.api.ModuleException.ErrorCode.MODULE_ACTIVE_ERROR;
 import static com.jrasp.api.ModuleException.ErrorCode.MODULE_FROZEN_ERROR;
@@ -53,6 +61,18 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
     private final CoreLoadedClassDataSource classDataSource;
     private final ProviderManager providerManager;
 
+    // 所有模块共用一个重新形变调度器，形变预算是全局的
+    private final RetransformScheduler retransformScheduler;
+
+    // 模块冻结超过该时间后撤销增强，0表示不撤销
+    private final long frozenDeweaveMillis;
+
+    // 撤销增强的后台调度线程，未开启时为null
+    private final ScheduledExecutorService deweaveExecutor;
+
+    // 是否把钩子代码移到桩方法中，JVM不允许重新形变时新增方法时退回到内联织入
+    private final boolean isWeaveOutOfLine;
+
     // 系统模块目录
     private final File systemModuleLibDir;               // 系统模块目录
     private final File systemModuleLibCopyDir;           // 系统模块Copy目录
@@ -98,6 +118,25 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         this.inst = inst;
         this.classDataSource = classDataSource;
         this.providerManager = providerManager;
+        this.retransformScheduler = new RetransformScheduler(
+                inst,
+                cfg.getRetransformBatchSize(),
+                cfg.getRetransformIntervalMillis(),
+                cfg.getRetransformMaxPauseMillis(),
+                cfg.getRetransformMaxClasses()
+        );
+        this.frozenDeweaveMillis = cfg.getFrozenDeweaveMillis();
+        this.isWeaveOutOfLine = cfg.isWeaveOutOfLine() && checkWeaveOutOfLine();
+        this.deweaveExecutor = frozenDeweaveMillis > 0
+                ? Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "jrasp-deweave");
+                thread.setDaemon(true);
+                return thread;
+            }
+        })
+                : null;
         // 系统模块
         this.systemModuleLibDir = new File(cfg.getSystemModuleLibPath());
         this.systemModuleLibCopyDir = new File(cfg.getRuntimeSystemModulePath());
@@ -240,7 +279,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
                             new ReleaseResource<ModuleEventWatcher>(
                                     RaspProtector.instance.protectProxy(
                                             ModuleEventWatcher.class,
-                                            new DefaultModuleEventWatcher(inst, classDataSource, coreModule, cfg.isEnableUnsafe(), cfg.getNamespace())
+                                            new DefaultModuleEventWatcher(inst, classDataSource, coreModule, cfg.isEnableUnsafe(), isWeaveOutOfLine, cfg.getNamespace(), retransformScheduler)
                                     )
                             ) {
                                 @Override
@@ -350,6 +389,26 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
                     );
                 }
 
+                // RetransformMonitor注入
+                else if (RetransformMonitor.class.isAssignableFrom(fieldType)) {
+                    writeField(
+                            resourceField,
+                            module,
+                            retransformScheduler,
+                            true
+                    );
+                }
+
+                // WovenSizeMonitor注入
+                else if (WovenSizeMonitor.class.isAssignableFrom(fieldType)) {
+                    writeField(
+                            resourceField,
+                            module,
+                            WovenSizeStatistic.instance,
+                            true
+                    );
+                }
+
                 // EventMonitor注入
                 else if (EventMonitor.class.isAssignableFrom(fieldType)) {
                     writeField(
@@ -518,6 +577,13 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
             }
         }
 
+        if (null != deweaveExecutor) {
+            deweaveExecutor.shutdownNow();
+        }
+
+        // 放弃还在排队的受限形变
+        retransformScheduler.destroy();
+
     }
 
     @Override
@@ -538,12 +604,18 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         // 通知生命周期
         callAndFireModuleLifeCycle(coreModule, MODULE_ACTIVE);
 
+        // 增强已被撤销的模块需要先重新增强
+        if (coreModule.isDewoven()) {
+            reweave(coreModule);
+        }
+
         // 激活所有监听器
         for (final RaspClassFileTransformer raspClassFileTransformer : coreModule.getRaspClassFileTransformers()) {
             EventListenerHandler.getSingleton().active(
                     raspClassFileTransformer.getListenerId(),
                     raspClassFileTransformer.getEventListener(),
-                    raspClassFileTransformer.getEventTypeArray()
+                    raspClassFileTransformer.getEventTypeArray(),
+                    raspClassFileTransformer.isProcessTopOnly()
             );
         }
 
@@ -589,6 +661,109 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
 
         // 标记模块为：已冻结
         coreModule.markActivated(false);
+
+        scheduleDeweaveIfNecessary(coreModule);
+    }
+
+    /*
+     * 模块冻结超过一定时间后，在后台撤销其增强，被增强过的类恢复为原始字节码，
+     * 冻结的模块不再给热点方法带来任何开销
+     */
+    private void scheduleDeweaveIfNecessary(final CoreModule coreModule) {
+        if (null == deweaveExecutor
+                || deweaveExecutor.isShutdown()) {
+            return;
+        }
+        deweaveExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deweave(coreModule);
+                } catch (Throwable cause) {
+                    logger.warn(AGENT_COMMON_LOG_ID, "deweave module occur error! module={};", coreModule.getUniqueId(), cause);
+                }
+            }
+        }, frozenDeweaveMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void deweave(final CoreModule coreModule) {
+        final List<RaspClassFileTransformer> raspClassFileTransformers;
+        synchronized (this) {
+            // 期间被重新激活、卸载，或冻结时间不够(冻结后又激活再冻结)的模块不处理
+            if (!coreModule.isLoaded()
+                    || coreModule.isActivated()
+                    || coreModule.isDewoven()
+                    || loadedModuleBOMap.get(coreModule.getUniqueId()) != coreModule
+                    || System.currentTimeMillis() - coreModule.getFrozenTimeMillis() < frozenDeweaveMillis) {
+                return;
+            }
+            raspClassFileTransformers = new ArrayList<RaspClassFileTransformer>(coreModule.getRaspClassFileTransformers());
+            for (final RaspClassFileTransformer raspClassFileTransformer : raspClassFileTransformers) {
+                raspClassFileTransformer.markDewoven(true);
+            }
+            coreModule.markDewoven(true);
+        }
+
+        // 形变在锁外进行，不阻塞模块管理的其他操作
+        final List<Class<?>> waitingReTransformClasses
+                = DefaultModuleEventWatcher.findAffectedClasses(inst, classDataSource, raspClassFileTransformers);
+        logger.info(AGENT_COMMON_LOG_ID, "deweave frozen module, module={};classes={};",
+                coreModule.getUniqueId(),
+                waitingReTransformClasses.size()
+        );
+        reTransformQuietly(coreModule, waitingReTransformClasses);
+    }
+
+    // 桩方法是重新形变时新增到类上的方法，JVM不允许时只能内联织入
+    private boolean checkWeaveOutOfLine() {
+        if (PlatformDependentUtil.isRedefineAddDeleteMethodsAllowed()) {
+            return true;
+        }
+        logger.warn(AGENT_COMMON_LOG_ID, "weaveOutOfLine is disabled, jvm does not allow retransform to add methods. "
+                + "java={};vm={}; use -XX:+AllowRedefinitionToAddDeleteMethods on HotSpot 13+ to enable it, fallback to inline weaving.",
+                PlatformDependentUtil.javaVersion(), System.getProperty("java.vm.name"));
+        return false;
+    }
+
+    private void reweave(final CoreModule coreModule) {
+        final List<Matcher> matchers = new ArrayList<Matcher>();
+        for (final RaspClassFileTransformer raspClassFileTransformer : coreModule.getRaspClassFileTransformers()) {
+            raspClassFileTransformer.markDewoven(false);
+            matchers.add(raspClassFileTransformer.getMatcher());
+        }
+        coreModule.markDewoven(false);
+        if (matchers.isEmpty()) {
+            return;
+        }
+        final List<Class<?>> waitingReTransformClasses = classDataSource.findForReTransform(
+                matchers.size() == 1
+                        ? matchers.get(0)
+                        : new GroupMatcher.Or(matchers.toArray(new Matcher[0]))
+        );
+        logger.info(AGENT_COMMON_LOG_ID, "reweave module, module={};classes={};",
+                coreModule.getUniqueId(),
+                waitingReTransformClasses.size()
+        );
+        reTransformQuietly(coreModule, waitingReTransformClasses);
+    }
+
+    private void reTransformQuietly(final CoreModule coreModule,
+                                    final List<Class<?>> waitingReTransformClasses) {
+        retransformScheduler.reTransform(waitingReTransformClasses, false, new RetransformScheduler.Callback() {
+            @Override
+            public void onSuccess(Class<?> clazz, int index) {
+            }
+
+            @Override
+            public void onFinish() {
+            }
+
+            @Override
+            public void onFailed(Class<?> clazz, int index, Throwable cause) {
+                logger.warn(AGENT_COMMON_LOG_ID, "retransform class={} of module={} failed, ignore this class.",
+                        clazz.getName(), coreModule.getUniqueId(), cause);
+            }
+        });
     }
 
     @Override
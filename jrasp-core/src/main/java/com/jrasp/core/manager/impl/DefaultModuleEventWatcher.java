@@ -1,35 +1,38 @@
 package com.jrasp.core.manager.impl;
 
 import com.jrasp.api.event.Event;
+import com.jrasp.api.filter.CallSiteFilter;
 import com.jrasp.api.filter.Filter;
 import com.jrasp.api.listener.EventListener;
 import com.jrasp.api.listener.ext.EventWatchCondition;
+import com.jrasp.api.listener.ext.ProcessTopOnlyCondition;
 import com.jrasp.api.log.Log;
-import com.jrasp.api.resource.ModuleEventWatcher;
+import com.jrasp.api.resource.BatchableModuleEventWatcher;
 import com.jrasp.core.CoreModule;
+import com.jrasp.core.enhance.WovenSizeStatistic;
+import com.jrasp.core.enhance.weaver.CallSiteRegistry;
 import com.jrasp.core.enhance.weaver.EventListenerHandler;
 import com.jrasp.core.log.LogFactory;
 import com.jrasp.core.manager.CoreLoadedClassDataSource;
+import com.jrasp.core.util.RaspProtector;
 import com.jrasp.core.util.Sequencer;
 import com.jrasp.core.util.matcher.ExtFilterMatcher;
 import com.jrasp.core.util.matcher.GroupMatcher;
 import com.jrasp.core.util.matcher.Matcher;
-import org.apache.commons.collections.CollectionUtils;
 
 import java.lang.instrument.Instrumentation;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.jrasp.api.filter.ExtFilter.ExtFilterFactory.make;
 import static com.jrasp.core.log.AgentLogIdConstant.AGENT_COMMON_LOG_ID;
+import static com.jrasp.core.util.RaspStringUtils.toInternalClassName;
 import static com.jrasp.core.util.matcher.ExtFilterMatcher.toOrGroupMatcher;
 
 /**
  * 默认事件观察者实现
  */
-public class DefaultModuleEventWatcher implements ModuleEventWatcher {
+public class DefaultModuleEventWatcher implements BatchableModuleEventWatcher {
 
     private final Log logger = LogFactory.getLog(getClass());
 
@@ -37,21 +40,32 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
     private final CoreLoadedClassDataSource classDataSource;
     private final CoreModule coreModule;
     private final boolean isEnableUnsafe;
+    private final boolean isWeaveOutOfLine;
     private final String namespace;
 
+    // 重新形变调度器
+    private final RetransformScheduler retransformScheduler;
+
     // 观察ID序列生成器
     private final Sequencer watchIdSequencer = new Sequencer();
 
+    // 观察在模块内的顺序，用于计算跨进程稳定的监听器ID
+    private final AtomicInteger watchOrder = new AtomicInteger();
+
     DefaultModuleEventWatcher(final Instrumentation inst,
                               final CoreLoadedClassDataSource classDataSource,
                               final CoreModule coreModule,
                               final boolean isEnableUnsafe,
-                              final String namespace) {
+                              final boolean isWeaveOutOfLine,
+                              final String namespace,
+                              final RetransformScheduler retransformScheduler) {
         this.inst = inst;
         this.classDataSource = classDataSource;
         this.coreModule = coreModule;
         this.isEnableUnsafe = isEnableUnsafe;
+        this.isWeaveOutOfLine = isWeaveOutOfLine;
         this.namespace = namespace;
+        this.retransformScheduler = retransformScheduler;
     }
 
 
@@ -80,61 +94,89 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
 
     /*
      * 形变观察所影响的类
+     * 交由调度器按批、按预算形变，全部形变结束后通知进度完成，
+     * 完成时的计数为cCnt/mCnt加上statisticTransformers的影响统计
      */
     private void reTransformClasses(
-        final int watchId,
+        final String watchId,
         final List<Class<?>> waitingReTransformClasses,
-        final Progress progress) {
+        final boolean isThrottled,
+        final Progress progress,
+        final List<RaspClassFileTransformer> statisticTransformers,
+        final int cCnt,
+        final int mCnt) {
         // 需要形变总数
         final int total = waitingReTransformClasses.size();
 
-        // 如果找不到需要被重新增强的类则直接返回
-        if (CollectionUtils.isEmpty(waitingReTransformClasses)) {
-            return;
-        }
+        retransformScheduler.reTransform(waitingReTransformClasses, isThrottled, new RetransformScheduler.Callback() {
 
-        int index = 0;
-        for (final Class<?> waitingReTransformClass : waitingReTransformClasses) {
-            index++;
-            try {
-                if (null != progress) {
-                    try {
-                        progress.progressOnSuccess(waitingReTransformClass, index);
-                    } catch (Throwable cause) {
-                        // 在进行进度汇报的过程中抛出异常,直接进行忽略,因为不影响形变的主体流程
-                        // 仅仅只是一个汇报作用而已
-                        logger.warn(AGENT_COMMON_LOG_ID,"watch={} in module={} on {} report progressOnSuccess occur exception at index={};total={};",
-                                watchId, coreModule.getUniqueId(), waitingReTransformClass,
-                                index - 1, total,
-                                cause
-                        );
-                    }
-                }
-                inst.retransformClasses(waitingReTransformClass);
-                logger.info(AGENT_COMMON_LOG_ID,"watch={} in module={} single reTransform {} success, at index={};total={};",
-                        watchId, coreModule.getUniqueId(), waitingReTransformClass,
-                        index - 1, total
-                );
-            } catch (Throwable causeOfReTransform) {
+            @Override
+            public void onSuccess(final Class<?> clazz, final int index) {
+                reportProgressOnSuccess(watchId, clazz, index, total, progress);
+            }
+
+            @Override
+            public void onFailed(final Class<?> clazz, final int index, final Throwable causeOfReTransform) {
                 logger.warn(AGENT_COMMON_LOG_ID,"watch={} in module={} single reTransform {} failed, at index={};total={}. ignore this class.",
-                        watchId, coreModule.getUniqueId(), waitingReTransformClass,
+                        watchId, coreModule.getUniqueId(), clazz,
                         index - 1, total,
                         causeOfReTransform
                 );
-                if (null != progress) {
-                    try {
-                        progress.progressOnFailed(waitingReTransformClass, index, causeOfReTransform);
-                    } catch (Throwable cause) {
-                        logger.warn(AGENT_COMMON_LOG_ID,"watch={} in module={} on {} report progressOnFailed occur exception, at index={};total={};",
-                                watchId, coreModule.getUniqueId(), waitingReTransformClass,
-                                index - 1, total,
-                                cause
-                        );
-                    }
+                reportProgressOnFailed(watchId, clazz, index, total, causeOfReTransform, progress);
+            }
+
+            @Override
+            public void onFinish() {
+                int totalCCnt = cCnt, totalMCnt = mCnt;
+                for (final RaspClassFileTransformer raspClassFileTransformer : statisticTransformers) {
+                    totalCCnt += raspClassFileTransformer.getAffectStatistic().cCnt();
+                    totalMCnt += raspClassFileTransformer.getAffectStatistic().mCnt();
                 }
+                finishProgress(progress, totalCCnt, totalMCnt);
             }
-        }//for
 
+        });
+    }
+
+    private void reportProgressOnSuccess(final String watchId,
+                                         final Class<?> clazz,
+                                         final int index,
+                                         final int total,
+                                         final Progress progress) {
+        if (null == progress) {
+            return;
+        }
+        try {
+            progress.progressOnSuccess(clazz, index);
+        } catch (Throwable cause) {
+            // 在进行进度汇报的过程中抛出异常,直接进行忽略,因为不影响形变的主体流程
+            // 仅仅只是一个汇报作用而已
+            logger.warn(AGENT_COMMON_LOG_ID,"watch={} in module={} on {} report progressOnSuccess occur exception at index={};total={};",
+                    watchId, coreModule.getUniqueId(), clazz,
+                    index - 1, total,
+                    cause
+            );
+        }
+    }
+
+    private void reportProgressOnFailed(final String watchId,
+                                        final Class<?> clazz,
+                                        final int index,
+                                        final int total,
+                                        final Throwable causeOfReTransform,
+                                        final Progress progress) {
+        if (null == progress) {
+            return;
+        }
+        try {
+            progress.progressOnFailed(clazz, index, causeOfReTransform);
+        } catch (Throwable cause) {
+            logger.warn(AGENT_COMMON_LOG_ID,"watch={} in module={} on {} report progressOnFailed occur exception, at index={};total={};",
+                    watchId, coreModule.getUniqueId(), clazz,
+                    index - 1, total,
+                    cause
+            );
+        }
     }
 
     @Override
@@ -149,7 +191,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                      final EventListener listener,
                      final Progress progress,
                      final Event.Type... eventType) {
-        return watch(new ExtFilterMatcher(make(filter)), listener, progress, eventType);
+        return watch(new ExtFilterMatcher(make(filter)), toCallSiteFilter(filter), isProcessTopOnly(filter), listener, progress, eventType);
     }
 
     @Override
@@ -157,65 +199,185 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                      final EventListener listener,
                      final Progress progress,
                      final Event.Type... eventType) {
-        return watch(toOrGroupMatcher(condition.getOrFilterArray()), listener, progress, eventType);
+        return watch(toOrGroupMatcher(condition.getOrFilterArray()), toCallSiteFilter(condition), isProcessTopOnly(condition), listener, progress, eventType);
+    }
+
+    // 观察条件同时实现了CallSiteFilter时，只增强过滤通过的调用点
+    private static CallSiteFilter toCallSiteFilter(final Object condition) {
+        return condition instanceof CallSiteFilter
+                ? (CallSiteFilter) condition
+                : null;
+    }
+
+    // 观察条件同时实现了ProcessTopOnlyCondition时，嵌套的调用不产生事件
+    private static boolean isProcessTopOnly(final Object condition) {
+        return condition instanceof ProcessTopOnlyCondition
+                && ((ProcessTopOnlyCondition) condition).isProcessTopOnly();
     }
 
     // 这里是用matcher重制过后的watch
     private int watch(final Matcher matcher,
+                      final CallSiteFilter callSiteFilter,
+                      final boolean isProcessTopOnly,
                       final EventListener listener,
                       final Progress progress,
                       final Event.Type... eventType) {
+        final RaspClassFileTransformer raspClassFileTransformer = newRaspClassFileTransformer(matcher, callSiteFilter, isProcessTopOnly, listener, eventType);
+        install(
+                Collections.singletonList(raspClassFileTransformer),
+                null == progress
+                        ? Collections.<Progress>emptyList()
+                        : Collections.singletonList(progress)
+        );
+        return raspClassFileTransformer.getWatchId();
+    }
+
+    private RaspClassFileTransformer newRaspClassFileTransformer(final Matcher matcher,
+                                                                 final CallSiteFilter callSiteFilter,
+                                                                 final boolean isProcessTopOnly,
+                                                                 final EventListener listener,
+                                                                 final Event.Type... eventType) {
         final int watchId = watchIdSequencer.next();
-        // 给对应的模块追加ClassFileTransformer
-        final RaspClassFileTransformer raspClassFileTransformer = new RaspClassFileTransformer(inst,
-                watchId, coreModule.getUniqueId(), matcher, listener, isEnableUnsafe, eventType, namespace);
+        final int listenerId = ListenerIds.instance.allocate(namespace, coreModule.getUniqueId(), watchOrder.getAndIncrement());
+        return new RaspClassFileTransformer(inst,
+                watchId, coreModule.getUniqueId(), matcher, callSiteFilter, isProcessTopOnly, listener, listenerId, isEnableUnsafe, isWeaveOutOfLine, eventType, namespace);
+    }
+
+    // 安装一组观察：统一查找一次待形变的类，每个类只重新形变一次
+    private void install(final List<RaspClassFileTransformer> raspClassFileTransformers,
+                         final List<Progress> progresses) {
+
+        final List<Integer> watchIds = new ArrayList<Integer>();
+        final List<Matcher> matchers = new ArrayList<Matcher>();
+        for (final RaspClassFileTransformer raspClassFileTransformer : raspClassFileTransformers) {
+            watchIds.add(raspClassFileTransformer.getWatchId());
+            matchers.add(raspClassFileTransformer.getMatcher());
+
+            // 开始使用未匹配缓存，必须在addTransformer之前，保证代数顺序和形变器顺序一致
+            raspClassFileTransformer.getMatcher().register();
 
-        // 注册到CoreModule中
-        coreModule.getRaspClassFileTransformers().add(raspClassFileTransformer);
+            // 注册到CoreModule中
+            coreModule.getRaspClassFileTransformers().add(raspClassFileTransformer);
 
-        //这里addTransformer后，接下来引起的类加载都会经过raspClassFileTransformer
-        inst.addTransformer(raspClassFileTransformer, true);
+            //这里addTransformer后，接下来引起的类加载都会经过raspClassFileTransformer
+            inst.addTransformer(raspClassFileTransformer, true);
+        }
+        final String watchId = watchIds.size() == 1
+                ? String.valueOf(watchIds.get(0))
+                : watchIds.toString();
 
         // 查找需要渲染的类集合
-        final List<Class<?>> waitingReTransformClasses = classDataSource.findForReTransform(matcher);
+        final List<Class<?>> waitingReTransformClasses = classDataSource.findForReTransform(
+                matchers.size() == 1
+                        ? matchers.get(0)
+                        : new GroupMatcher.Or(matchers.toArray(new Matcher[0]))
+        );
         logger.info(AGENT_COMMON_LOG_ID,"watch={} in module={} found {} classes for watch(ing).",
                 watchId,
                 coreModule.getUniqueId(),
                 waitingReTransformClasses.size()
         );
 
-        int cCnt = 0, mCnt = 0;
+        final Progress progress = ProgressGroup.of(progresses);
 
         // 进度通知启动
         beginProgress(progress, waitingReTransformClasses.size());
-        try {
 
-            // 应用JVM
-            reTransformClasses(watchId,waitingReTransformClasses, progress);
+        // 应用JVM，所有观察的形变器都已注册，所以一次形变会同时应用所有观察
+        // 超出形变预算时剩余的类由后台继续形变，全部形变结束后才通知进度完成
+        reTransformClasses(watchId, waitingReTransformClasses, true, progress, raspClassFileTransformers, 0, 0);
+
+        // 激活增强类
+        if (coreModule.isActivated()) {
+            for (final RaspClassFileTransformer raspClassFileTransformer : raspClassFileTransformers) {
+                EventListenerHandler.getSingleton().active(
+                        raspClassFileTransformer.getListenerId(),
+                        raspClassFileTransformer.getEventListener(),
+                        raspClassFileTransformer.getEventTypeArray(),
+                        raspClassFileTransformer.isProcessTopOnly()
+                );
+            }
+        }
+    }
+
+    @Override
+    public WatchBatch batch() {
+        return new DefaultWatchBatch();
+    }
+
+    /**
+     * 默认批量观察实现
+     */
+    private class DefaultWatchBatch implements WatchBatch {
+
+        private final List<RaspClassFileTransformer> raspClassFileTransformers = new ArrayList<RaspClassFileTransformer>();
+        private final List<Progress> progresses = new ArrayList<Progress>();
+        private boolean isCommitted = false;
 
-            // 计数
-            cCnt += raspClassFileTransformer.getAffectStatistic().cCnt();
-            mCnt += raspClassFileTransformer.getAffectStatistic().mCnt();
+        @Override
+        public int watch(final Filter filter,
+                         final EventListener listener,
+                         final Progress progress,
+                         final Event.Type... eventType) {
+            return watch(new ExtFilterMatcher(make(filter)), toCallSiteFilter(filter), isProcessTopOnly(filter), listener, progress, eventType);
+        }
+
+        @Override
+        public int watch(final EventWatchCondition condition,
+                         final EventListener listener,
+                         final Progress progress,
+                         final Event.Type... eventType) {
+            return watch(toOrGroupMatcher(condition.getOrFilterArray()), toCallSiteFilter(condition), isProcessTopOnly(condition), listener, progress, eventType);
+        }
 
+        private synchronized int watch(final Matcher matcher,
+                                       final CallSiteFilter callSiteFilter,
+                                       final boolean isProcessTopOnly,
+                                       final EventListener listener,
+                                       final Progress progress,
+                                       final Event.Type... eventType) {
+            checkNotCommitted();
+            final RaspClassFileTransformer raspClassFileTransformer = newRaspClassFileTransformer(matcher, callSiteFilter, isProcessTopOnly, listener, eventType);
+            raspClassFileTransformers.add(raspClassFileTransformer);
+            if (null != progress) {
+                progresses.add(progress);
+            }
+            return raspClassFileTransformer.getWatchId();
+        }
 
-            // 激活增强类
-            if (coreModule.isActivated()) {
-                final int listenerId = raspClassFileTransformer.getListenerId();
-                EventListenerHandler.getSingleton().active(listenerId, listener, eventType);
+        @Override
+        public synchronized void commit(final Progress progress) {
+            checkNotCommitted();
+            isCommitted = true;
+            if (null != progress) {
+                progresses.add(progress);
+            }
+            if (raspClassFileTransformers.isEmpty()) {
+                return;
             }
 
-        } finally {
-            finishProgress(progress, cCnt, mCnt);
+            // 批量对象没有经过RaspProtector代理，这里需要自行进入保护
+            RaspProtector.instance.enterProtecting();
+            try {
+                install(raspClassFileTransformers, progresses);
+            } finally {
+                RaspProtector.instance.exitProtecting();
+            }
+        }
+
+        private void checkNotCommitted() {
+            if (isCommitted) {
+                throw new IllegalStateException("watch batch already committed.");
+            }
         }
 
-        return watchId;
     }
 
     @Override
     public void delete(final int watcherId,
                        final Progress progress) {
 
-        final Set<Matcher> waitingRemoveMatcherSet = new LinkedHashSet<Matcher>();
+        final List<RaspClassFileTransformer> waitingRemoveTransformers = new ArrayList<RaspClassFileTransformer>();
 
         // 找出待删除的RaspClassFileTransformer
         final Iterator<RaspClassFileTransformer> cftIt = coreModule.getRaspClassFileTransformers().iterator();
@@ -235,8 +397,17 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                 cCnt += raspClassFileTransformer.getAffectStatistic().cCnt();
                 mCnt += raspClassFileTransformer.getAffectStatistic().mCnt();
 
-                // 追加到待删除过滤器集合
-                waitingRemoveMatcherSet.add(raspClassFileTransformer.getMatcher());
+                // 停止使用未匹配缓存
+                raspClassFileTransformer.getMatcher().unregister();
+
+                // 删除后类会恢复，字节码大小报告随之失效
+                WovenSizeStatistic.instance.remove(raspClassFileTransformer.getListenerId());
+
+                // 释放该监听器登记的调用点
+                CallSiteRegistry.instance.release(raspClassFileTransformer.getListenerId());
+
+                // 追加到待删除形变器集合
+                waitingRemoveTransformers.add(raspClassFileTransformer);
 
                 // 清除掉该RaspClassFileTransformer
                 cftIt.remove();
@@ -245,9 +416,8 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
         }
 
         // 查找需要删除后重新渲染的类集合
-        final List<Class<?>> waitingReTransformClasses = classDataSource.findForReTransform(
-                new GroupMatcher.Or(waitingRemoveMatcherSet.toArray(new Matcher[0]))
-        );
+        // 只有真正被这些观察增强过的类才需要重新形变，不需要再对全量类做匹配
+        final List<Class<?>> waitingReTransformClasses = findAffectedClasses(inst, classDataSource, waitingRemoveTransformers);
         logger.info(AGENT_COMMON_LOG_ID,"watch={} in module={} found {} classes for delete.",
                 watcherId,
                 coreModule.getUniqueId(),
@@ -255,12 +425,39 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
         );
 
         beginProgress(progress, waitingReTransformClasses.size());
-        try {
-            // 应用JVM
-            reTransformClasses(watcherId, waitingReTransformClasses, progress);
-        } finally {
-            finishProgress(progress, cCnt, mCnt);
+
+        // 应用JVM，删除观察不受形变预算限制
+        reTransformClasses(String.valueOf(watcherId), waitingReTransformClasses, false, progress,
+                Collections.<RaspClassFileTransformer>emptyList(), cCnt, mCnt);
+
+        // 类都已恢复，织入过这些监听器ID的代码不再执行，ID可以释放给后续的观察
+        for (final RaspClassFileTransformer raspClassFileTransformer : waitingRemoveTransformers) {
+            ListenerIds.instance.release(raspClassFileTransformer.getListenerId());
+        }
+    }
+
+    // 查找被形变器增强过的已加载类
+    static List<Class<?>> findAffectedClasses(final Instrumentation inst,
+                                              final CoreLoadedClassDataSource classDataSource,
+                                              final List<RaspClassFileTransformer> raspClassFileTransformers) {
+        final List<Class<?>> affectedClasses = new ArrayList<Class<?>>();
+        if (raspClassFileTransformers.isEmpty()) {
+            return affectedClasses;
+        }
+        final Iterator<Class<?>> itForLoaded = classDataSource.iteratorForLoadedClasses();
+        while (itForLoaded.hasNext()) {
+            final Class<?> clazz = itForLoaded.next();
+            final String internalClassName = toInternalClassName(clazz.getName());
+            for (final RaspClassFileTransformer raspClassFileTransformer : raspClassFileTransformers) {
+                if (raspClassFileTransformer.getAffectStatistic().isAffected(clazz.getClassLoader(), internalClassName)) {
+                    if (inst.isModifiableClass(clazz)) {
+                        affectedClasses.add(clazz);
+                    }
+                    break;
+                }
+            }
         }
+        return affectedClasses;
     }
 
     @Override
@@ -280,7 +477,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                          final WatchCallback watchCb,
                          final Progress dProgress,
                          final Event.Type... eventType) throws Throwable {
-        final int watchId = watch(new ExtFilterMatcher(make(filter)), listener, wProgress, eventType);
+        final int watchId = watch(new ExtFilterMatcher(make(filter)), toCallSiteFilter(filter), isProcessTopOnly(filter), listener, wProgress, eventType);
         try {
             watchCb.watchCompleted();
         } finally {
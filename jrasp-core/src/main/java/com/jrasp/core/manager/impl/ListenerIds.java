@@ -0,0 +1,64 @@
+package com.jrasp.core.manager.impl;
+
+import com.jrasp.core.util.ObjectIDs;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 监听器ID分配
+ * <p>
+ * 监听器ID会作为常量织入增强后的字节码，也是增强字节码磁盘缓存KEY的一部分。
+ * ID由[命名空间、模块ID、观察在模块内的顺序]计算得到，同一个模块重启或重新加载后，
+ * 按同样顺序发起的观察得到同样的ID，磁盘缓存因此可以跨进程命中
+ * </p>
+ * <p>
+ * 计算出的ID已被其他观察占用时顺延到下一个空闲ID，删除观察时释放
+ * </p>
+ */
+class ListenerIds {
+
+    static final ListenerIds instance = new ListenerIds();
+
+    // 已分配的ID : 观察指纹
+    private final ConcurrentHashMap<Integer, String> allocatedIds
+            = new ConcurrentHashMap<Integer, String>();
+
+    private ListenerIds() {
+
+    }
+
+    /**
+     * 分配监听器ID
+     *
+     * @param namespace  命名空间
+     * @param uniqueId   模块ID
+     * @param watchOrder 观察在模块内的顺序
+     * @return 监听器ID
+     */
+    int allocate(final String namespace,
+                 final String uniqueId,
+                 final int watchOrder) {
+        final String fingerprint = namespace + ":" + uniqueId + "#" + watchOrder;
+        // String.hashCode()的算法是规范约定的，不同进程中结果一致
+        int listenerId = fingerprint.hashCode() & Integer.MAX_VALUE;
+        while (true) {
+            if (ObjectIDs.NULL_ID == listenerId) {
+                listenerId++;
+            }
+            if (null == allocatedIds.putIfAbsent(listenerId, fingerprint)) {
+                return listenerId;
+            }
+            listenerId = (listenerId + 1) & Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 释放监听器ID
+     *
+     * @param listenerId 监听器ID
+     */
+    void release(final int listenerId) {
+        allocatedIds.remove(listenerId);
+    }
+
+}
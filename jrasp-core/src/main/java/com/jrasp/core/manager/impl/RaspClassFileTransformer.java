@@ -1,15 +1,18 @@
 package com.jrasp.core.manager.impl;
 
 import com.jrasp.api.event.Event;
+import com.jrasp.api.filter.CallSiteFilter;
 import com.jrasp.api.listener.EventListener;
 import com.jrasp.api.log.Log;
 import com.jrasp.core.enhance.EventEnhancer;
+import com.jrasp.core.enhance.WovenClassCache;
+import com.jrasp.core.enhance.WovenSizeStatistic;
 import com.jrasp.core.enhance.weaver.asm.EventWeaver;
 import com.jrasp.core.log.LogFactory;
 import com.jrasp.core.manager.NativeMethodEnhanceAware;
-import com.jrasp.core.util.ObjectIDs;
 import com.jrasp.core.util.RaspClassUtils;
 import com.jrasp.core.util.RaspProtector;
+import com.jrasp.core.util.matcher.CachedMatcher;
 import com.jrasp.core.util.matcher.Matcher;
 import com.jrasp.core.util.matcher.MatchingResult;
 import com.jrasp.core.util.matcher.UnsupportedMatcher;
@@ -36,41 +39,52 @@ public class RaspClassFileTransformer implements ClassFileTransformer,NativeMeth
 
     private final int watchId;
     private final String uniqueId;
-    private final Matcher matcher;
+    private final CachedMatcher matcher;
+    private final CallSiteFilter callSiteFilter;
+    private final boolean isProcessTopOnly;
     private final EventListener eventListener;
     private final boolean isEnableUnsafe;
+    private final boolean isWeaveOutOfLine;
     private final Event.Type[] eventTypeArray;
 
     private final String namespace;
     private final int listenerId;
     private final AffectStatistic affectStatistic = new AffectStatistic();
 
+    // 是否已撤销增强：模块冻结过久后形变器保留注册，但不再增强任何类
+    private volatile boolean isDewoven = false;
+
     RaspClassFileTransformer(   final Instrumentation inst,
                                 final int watchId,
                                 final String uniqueId,
                                 final Matcher matcher,
+                                final CallSiteFilter callSiteFilter,
+                                final boolean isProcessTopOnly,
                                 final EventListener eventListener,
+                                final int listenerId,
                                 final boolean isEnableUnsafe,
+                                final boolean isWeaveOutOfLine,
                                 final Event.Type[] eventTypeArray,
                                 final String namespace) {
         this.inst = inst;
         this.watchId = watchId;
         this.uniqueId = uniqueId;
-        this.matcher = matcher;
+        this.matcher = new CachedMatcher(matcher);
+        this.callSiteFilter = callSiteFilter;
+        this.isProcessTopOnly = isProcessTopOnly;
         this.eventListener = eventListener;
         this.isEnableUnsafe = isEnableUnsafe;
+        this.isWeaveOutOfLine = isWeaveOutOfLine;
         this.eventTypeArray = eventTypeArray;
         this.namespace = namespace;
-        this.listenerId = ObjectIDs.instance.identity(eventListener);
+        this.listenerId = listenerId;
     }
 
     // 获取当前类结构
+    // 重新形变时类的结构不会改变，直接从当前字节码解析，无需再通过反射获取
     private ClassStructure getClassStructure(final ClassLoader loader,
-                                             final Class<?> classBeingRedefined,
                                              final byte[] srcByteCodeArray) {
-        return null == classBeingRedefined
-                ? createClassStructure(srcByteCodeArray, loader)
-                : createClassStructure(classBeingRedefined);
+        return createClassStructure(srcByteCodeArray, loader);
     }
 
     @Override
@@ -109,6 +123,11 @@ public class RaspClassFileTransformer implements ClassFileTransformer,NativeMeth
                               final String internalClassName,
                               final Class<?> classBeingRedefined,
                               final byte[] srcByteCodeArray) {
+        // 已撤销增强时原样返回，重新形变后类即恢复为原始字节码
+        if (isDewoven) {
+            return null;
+        }
+
         // 如果未开启unsafe开关，是不允许增强来自BootStrapClassLoader的类
         if (!isEnableUnsafe
                 && null == loader) {
@@ -116,7 +135,12 @@ public class RaspClassFileTransformer implements ClassFileTransformer,NativeMeth
             return null;
         }
 
-        final ClassStructure classStructure = getClassStructure(loader, classBeingRedefined, srcByteCodeArray);
+        // 已知不会被本次观察匹配的类，连类结构都不需要解析
+        if (matcher.isUnmatched(loader, internalClassName.replace('/', '.'))) {
+            return null;
+        }
+
+        final ClassStructure classStructure = getClassStructure(loader, srcByteCodeArray);
         final MatchingResult matchingResult = new UnsupportedMatcher(loader, isEnableUnsafe).and(matcher).matching(classStructure);
         final Set<String> behaviorSignCodes = matchingResult.getBehaviorSignCodes();
 
@@ -128,7 +152,40 @@ public class RaspClassFileTransformer implements ClassFileTransformer,NativeMeth
 
         // 开始进行类匹配
         try {
-            final byte[] toByteCodeArray = new EventEnhancer(this).toByteCodeArray(
+            // 同样的字节码在同样的观察下增强结果相同，命中磁盘缓存时跳过织入
+            final WovenClassCache wovenClassCache = WovenClassCache.instance;
+            final String cacheKey = wovenClassCache.isCacheable(eventTypeArray)
+                    ? wovenClassCache.toKey(srcByteCodeArray, namespace, listenerId, eventTypeArray, behaviorSignCodes, isWeaveOutOfLine)
+                    : null;
+            final WovenClassCache.Entry cacheEntry = null == cacheKey
+                    ? null
+                    : wovenClassCache.get(cacheKey);
+            if (null != cacheEntry) {
+                if ((cacheEntry.flags & WovenClassCache.FLAG_NATIVE_METHOD_ENHANCED) != 0) {
+                    makrNativeMethodEnhance();
+                }
+                affectStatistic.statisticAffect(loader, internalClassName, behaviorSignCodes);
+                WovenSizeStatistic.instance.statistic(loader, internalClassName, listenerId, srcByteCodeArray, cacheEntry.byteCodeArray);
+                logger.info(AGENT_COMMON_LOG_ID,"transform {} finished from woven class cache, by module={} in loader={}", internalClassName, uniqueId, loader);
+                return cacheEntry.byteCodeArray;
+            }
+
+            // 记录本次增强是否改写了native方法，缓存命中时需要据此重新设置native方法前缀
+            final boolean[] isNativeMethodEnhanced = new boolean[]{false};
+            final byte[] toByteCodeArray = new EventEnhancer(new NativeMethodEnhanceAware() {
+
+                @Override
+                public String getNativeMethodPrefix() {
+                    return RaspClassFileTransformer.this.getNativeMethodPrefix();
+                }
+
+                @Override
+                public void makrNativeMethodEnhance() {
+                    isNativeMethodEnhanced[0] = true;
+                    RaspClassFileTransformer.this.makrNativeMethodEnhance();
+                }
+
+            }, callSiteFilter, isWeaveOutOfLine).toByteCodeArray(
                     loader,
                     srcByteCodeArray,
                     behaviorSignCodes,
@@ -141,8 +198,17 @@ public class RaspClassFileTransformer implements ClassFileTransformer,NativeMeth
                 return null;
             }
 
+            if (null != cacheKey) {
+                wovenClassCache.put(
+                        cacheKey,
+                        isNativeMethodEnhanced[0] ? WovenClassCache.FLAG_NATIVE_METHOD_ENHANCED : 0,
+                        toByteCodeArray
+                );
+            }
+
             // statistic affect
             affectStatistic.statisticAffect(loader, internalClassName, behaviorSignCodes);
+            WovenSizeStatistic.instance.statistic(loader, internalClassName, listenerId, srcByteCodeArray, toByteCodeArray);
 
             logger.info(AGENT_COMMON_LOG_ID,"transform {} finished, by module={} in loader={}", internalClassName, uniqueId, loader);
             return toByteCodeArray;
@@ -185,7 +251,7 @@ public class RaspClassFileTransformer implements ClassFileTransformer,NativeMeth
      *
      * @return 匹配器
      */
-    Matcher getMatcher() {
+    CachedMatcher getMatcher() {
         return matcher;
     }
 
@@ -198,6 +264,24 @@ public class RaspClassFileTransformer implements ClassFileTransformer,NativeMeth
         return eventTypeArray;
     }
 
+    /**
+     * 是否只观察调用过程的最外层
+     *
+     * @return TRUE:只观察最外层;FALSE:观察每一层
+     */
+    boolean isProcessTopOnly() {
+        return isProcessTopOnly;
+    }
+
+    /**
+     * 标记是否撤销增强
+     *
+     * @param isDewoven TRUE:撤销增强;FALSE:恢复增强
+     */
+    void markDewoven(final boolean isDewoven) {
+        this.isDewoven = isDewoven;
+    }
+
     /**
      * 获取本次增强的影响统计
      *
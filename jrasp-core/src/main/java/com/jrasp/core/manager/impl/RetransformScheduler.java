@@ -0,0 +1,347 @@
+package com.jrasp.core.manager.impl;
+
+import com.jrasp.api.log.Log;
+import com.jrasp.api.resource.RetransformMonitor;
+import com.jrasp.core.log.LogFactory;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.jrasp.core.log.AgentLogIdConstant.AGENT_COMMON_LOG_ID;
+
+/**
+ * 重新形变调度器
+ * <p>
+ * 所有模块的重新形变都经过这里串行执行：按批调用{@link Instrumentation#retransformClasses(Class[])}。
+ * 开启预算后，观察产生的形变在当前预算周期的形变耗时或类数量超出预算时，
+ * 剩余的类交给后台线程在下一个周期继续形变，调用线程不会等待，
+ * 避免挂载到有流量的JVM时连续的安全点/去优化把业务毛刺拉长
+ * </p>
+ * <p>
+ * 删除观察、卸载和撤销增强不受预算限制，总是在调用线程上一次形变完成
+ * </p>
+ * <p>
+ * 调度器锁只保护预算和{@link Instrumentation#retransformClasses(Class[])}本身，
+ * 每批的形变结果先收集起来，释放锁之后再回调，模块的进度回调不会阻塞其他模块的形变
+ * </p>
+ */
+public class RetransformScheduler implements RetransformMonitor {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    /**
+     * 形变结果回调
+     */
+    interface Callback {
+
+        void onSuccess(Class<?> clazz, int index);
+
+        void onFailed(Class<?> clazz, int index, Throwable cause);
+
+        /**
+         * 一组类全部形变结束，只会回调一次；超出预算时在后台线程上回调
+         */
+        void onFinish();
+
+    }
+
+    private final Instrumentation inst;
+    private final int batchSize;
+    private final long intervalMillis;
+    private final long maxPauseMillisPerInterval;
+    private final int maxClassesPerInterval;
+
+    // 超出预算后继续形变的后台线程，没有开启预算时为null
+    private final ScheduledExecutorService deferExecutor;
+
+    // 当前预算周期，只在持有调度器锁时访问
+    private long intervalBeginMillis;
+    private long pauseMillisInInterval;
+    private int classesInInterval;
+
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicLong reTransformedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong throttledMillis = new AtomicLong();
+    private volatile long lastPauseMillis;
+
+    public RetransformScheduler(final Instrumentation inst,
+                                final int batchSize,
+                                final long intervalMillis,
+                                final long maxPauseMillisPerInterval,
+                                final int maxClassesPerInterval) {
+        this.inst = inst;
+        this.intervalMillis = intervalMillis;
+        this.maxPauseMillisPerInterval = maxPauseMillisPerInterval;
+        this.maxClassesPerInterval = maxClassesPerInterval;
+        // 单批不能超过每个周期允许的类数量
+        this.batchSize = maxClassesPerInterval > 0
+                ? Math.min(batchSize, maxClassesPerInterval)
+                : batchSize;
+        this.deferExecutor = maxPauseMillisPerInterval > 0 || maxClassesPerInterval > 0
+                ? Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "jrasp-retransform");
+                thread.setDaemon(true);
+                return thread;
+            }
+        })
+                : null;
+    }
+
+    /**
+     * 重新形变一组类
+     * <p>
+     * 不受预算限制时调用线程阻塞到全部形变完成；
+     * 受预算限制时只在调用线程上形变当前周期预算内的类，剩余的类由后台线程继续形变
+     * </p>
+     *
+     * @param classes     待形变的类，按顺序形变
+     * @param isThrottled 是否受预算限制
+     * @param callback    形变结果回调
+     */
+    void reTransform(final List<Class<?>> classes,
+                     final boolean isThrottled,
+                     final Callback callback) {
+        waitingCount.addAndGet(classes.size());
+        reTransform(new Job(classes, isThrottled && null != deferExecutor, callback));
+    }
+
+    // 从上次中断的位置继续形变，超出预算时把剩余部分推迟到下一个周期
+    private void reTransform(final Job job) {
+        boolean isDeferred = false;
+        try {
+            while (true) {
+                final List<Result> results = new ArrayList<Result>();
+                synchronized (this) {
+                    if (job.from >= job.classes.size()) {
+                        break;
+                    }
+                    final int to = Math.min(job.from + batchSize, job.classes.size());
+                    if (job.isThrottled) {
+                        final long deferMillis = getDeferMillis(to - job.from);
+                        if (deferMillis > 0) {
+                            isDeferred = defer(job, deferMillis);
+                            if (isDeferred) {
+                                return;
+                            }
+                        }
+                    }
+                    reTransform(job, job.from, to, results);
+                    job.from = to;
+                }
+                callback(job, results);
+            }
+        } finally {
+            if (!isDeferred) {
+                finish(job);
+            }
+        }
+    }
+
+    // 把剩余部分交给后台线程，线程池已关闭时放弃剩余的类
+    private boolean defer(final Job job, final long deferMillis) {
+        try {
+            deferExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    reTransform(job);
+                }
+            }, deferMillis, TimeUnit.MILLISECONDS);
+            throttledMillis.addAndGet(deferMillis);
+            return true;
+        } catch (RejectedExecutionException cause) {
+            logger.info(AGENT_COMMON_LOG_ID, "retransform scheduler is shutdown, abandon {} classes.",
+                    job.classes.size() - job.from);
+            return false;
+        }
+    }
+
+    // 在调度器锁之外回调本批的形变结果
+    private void callback(final Job job, final List<Result> results) {
+        for (final Result result : results) {
+            if (null == result.cause) {
+                job.callback.onSuccess(result.clazz, result.index);
+            } else {
+                job.callback.onFailed(result.clazz, result.index, result.cause);
+            }
+        }
+    }
+
+    private void finish(final Job job) {
+        // 异常中断或被放弃时把剩余未形变的类从等待数中扣除
+        waitingCount.addAndGet(job.finishedCount - job.classes.size());
+        try {
+            job.callback.onFinish();
+        } catch (Throwable cause) {
+            logger.warn(AGENT_COMMON_LOG_ID, "retransform finish callback failed.", cause);
+        }
+    }
+
+    /*
+     * 形变[from,to)区间的类
+     * 整批形变失败时对半拆分重试，直到定位出失败的那个类，其余的类照常形变
+     * 形变结果按顺序收集到results中，由调用方在释放锁之后回调
+     */
+    private void reTransform(final Job job,
+                             final int from,
+                             final int to,
+                             final List<Result> results) {
+        final List<Class<?>> classes = job.classes;
+        final int count = to - from;
+        final long beginMillis = System.currentTimeMillis();
+        try {
+            inst.retransformClasses(classes.subList(from, to).toArray(new Class<?>[0]));
+        } catch (Throwable causeOfReTransform) {
+            accountPause(beginMillis, count);
+
+            // 拆分到单个类仍然失败，说明就是这个类的问题
+            if (count == 1) {
+                failedCount.incrementAndGet();
+                waitingCount.decrementAndGet();
+                job.finishedCount++;
+                results.add(new Result(classes.get(from), from + 1, causeOfReTransform));
+                return;
+            }
+
+            logger.info(AGENT_COMMON_LOG_ID, "batch reTransform {} classes failed, at index={};total={}. bisect and retry.",
+                    count, from, classes.size());
+            final int middle = (from + to) >>> 1;
+            reTransform(job, from, middle, results);
+            reTransform(job, middle, to, results);
+            return;
+        }
+
+        accountPause(beginMillis, count);
+        logger.info(AGENT_COMMON_LOG_ID, "batch reTransform {} classes success, at index={};total={};cost={}ms;",
+                count, from, classes.size(), lastPauseMillis);
+        for (int index = from; index < to; index++) {
+            reTransformedCount.incrementAndGet();
+            waitingCount.decrementAndGet();
+            job.finishedCount++;
+            results.add(new Result(classes.get(index), index + 1, null));
+        }
+    }
+
+    // 统计本次形变的停顿
+    private void accountPause(final long beginMillis, final int count) {
+        lastPauseMillis = System.currentTimeMillis() - beginMillis;
+        pauseMillisInInterval += lastPauseMillis;
+        classesInInterval += count;
+    }
+
+    // 当前周期的预算不够形变count个类时，返回距离下一个周期的时间，否则返回0
+    private long getDeferMillis(final int count) {
+        final long now = System.currentTimeMillis();
+        if (now - intervalBeginMillis >= intervalMillis) {
+            intervalBeginMillis = now;
+            pauseMillisInInterval = 0;
+            classesInInterval = 0;
+            return 0;
+        }
+        final boolean isPauseExhausted = maxPauseMillisPerInterval > 0
+                && pauseMillisInInterval >= maxPauseMillisPerInterval;
+        final boolean isClassesExhausted = maxClassesPerInterval > 0
+                && classesInInterval + count > maxClassesPerInterval;
+        return isPauseExhausted || isClassesExhausted
+                ? Math.max(1L, intervalBeginMillis + intervalMillis - now)
+                : 0;
+    }
+
+    /**
+     * 关闭后台形变线程，尚未开始的剩余形变被放弃
+     */
+    void destroy() {
+        if (null != deferExecutor) {
+            deferExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 一组待形变的类及其形变位置，同一时刻只会被一个线程处理，形变位置只在持有调度器锁时修改
+     */
+    private static class Job {
+
+        private final List<Class<?>> classes;
+        private final boolean isThrottled;
+        private final Callback callback;
+        private int from;
+        private int finishedCount;
+
+        Job(final List<Class<?>> classes,
+            final boolean isThrottled,
+            final Callback callback) {
+            this.classes = classes;
+            this.isThrottled = isThrottled;
+            this.callback = callback;
+        }
+
+    }
+
+    /**
+     * 单个类的形变结果
+     */
+    private static class Result {
+
+        private final Class<?> clazz;
+        private final int index;
+
+        // 形变成功时为null
+        private final Throwable cause;
+
+        Result(final Class<?> clazz,
+               final int index,
+               final Throwable cause) {
+            this.clazz = clazz;
+            this.index = index;
+            this.cause = cause;
+        }
+
+    }
+
+    @Override
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    @Override
+    public long getReTransformedCount() {
+        return reTransformedCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public long getThrottledMillis() {
+        return throttledMillis.get();
+    }
+
+    @Override
+    public long getLastPauseMillis() {
+        return lastPauseMillis;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public long getMaxPauseMillisPerInterval() {
+        return maxPauseMillisPerInterval;
+    }
+
+    @Override
+    public int getMaxClassesPerInterval() {
+        return maxClassesPerInterval;
+    }
+
+}
@@ -1,12 +1,16 @@
 package com.jrasp.core.util;
 
+import com.jrasp.api.util.ConcurrentWeakIdentityMap;
 import com.jrasp.core.util.matcher.structure.ClassStructure;
 import com.jrasp.core.util.matcher.structure.ClassStructureFactory;
+import com.jrasp.core.util.matcher.structure.TypeHierarchyIndex;
 import org.apache.commons.io.IOUtils;
 
 import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.jrasp.core.util.RaspStringUtils.toInternalClassName;
+import static com.jrasp.core.util.RaspStringUtils.toJavaClassName;
 
 public class AsmUtils {
 
@@ -21,10 +25,56 @@ public class AsmUtils {
      * @return 共同的父类
      */
     public static String getCommonSuperClass(String type1, String type2, ClassLoader loader) {
-        return getCommonSuperClassImplByAsm(type1, type2, loader);
+
+        // 优先从内存中的继承关系索引获取，不做任何IO，也不会触发类加载
+        final String commonSuperClassName = TypeHierarchyIndex.instance.getCommonSuperClassName(
+                loader,
+                toJavaClassName(type1),
+                toJavaClassName(type2)
+        );
+        if (null != commonSuperClassName) {
+            return toInternalClassName(commonSuperClassName);
+        }
+
+        // 索引中信息不完整(如父类尚未加载)时才读取字节码计算，结果按ClassLoader缓存
+        final ConcurrentHashMap<String, String> commonSuperClasses = getCommonSuperClasses(loader);
+        final String key = type1.concat(";").concat(type2);
+        final String cachedCommonSuperClass = commonSuperClasses.get(key);
+        if (null != cachedCommonSuperClass) {
+            return cachedCommonSuperClass;
+        }
+
+        // 字节码找不到时只能退化为Object，这个结果不可信(资源可能稍后才可见)，不做缓存
+        final String commonSuperClass = getCommonSuperClassImplByAsm(type1, type2, loader);
+        if (null == commonSuperClass) {
+            return "java/lang/Object";
+        }
+        commonSuperClasses.putIfAbsent(key, commonSuperClass);
+        return commonSuperClass;
     }
 
-    // implements by ASM
+    // BootstrapClassLoader下的共同父类缓存
+    private static final ConcurrentHashMap<String, String> bootstrapCommonSuperClasses
+            = new ConcurrentHashMap<String, String>();
+
+    // 其他ClassLoader下的共同父类缓存，ClassLoader被回收后随之消失
+    private static final ConcurrentWeakIdentityMap<ClassLoader, ConcurrentHashMap<String, String>> loaderCommonSuperClasses
+            = new ConcurrentWeakIdentityMap<ClassLoader, ConcurrentHashMap<String, String>>();
+
+    private static ConcurrentHashMap<String, String> getCommonSuperClasses(final ClassLoader loader) {
+        if (null == loader) {
+            return bootstrapCommonSuperClasses;
+        }
+        final ConcurrentHashMap<String, String> commonSuperClasses = loaderCommonSuperClasses.get(loader);
+        if (null != commonSuperClasses) {
+            return commonSuperClasses;
+        }
+        final ConcurrentHashMap<String, String> newCommonSuperClasses = new ConcurrentHashMap<String, String>();
+        final ConcurrentHashMap<String, String> existCommonSuperClasses = loaderCommonSuperClasses.putIfAbsent(loader, newCommonSuperClasses);
+        return null == existCommonSuperClasses ? newCommonSuperClasses : existCommonSuperClasses;
+    }
+
+    // implements by ASM，字节码缺失导致无法判定时返回null
     private static String getCommonSuperClassImplByAsm(String type1, String type2, ClassLoader targetClassLoader) {
         InputStream inputStreamOfType1 = null, inputStreamOfType2 = null;
         try {
@@ -33,15 +83,15 @@ public class AsmUtils {
                 targetClassLoader = ClassLoader.getSystemClassLoader();
             }
             if (null == targetClassLoader) {
-                return "java/lang/Object";
+                return null;
             }
             inputStreamOfType1 = targetClassLoader.getResourceAsStream(type1 + ".class");
             if (null == inputStreamOfType1) {
-                return "java/lang/Object";
+                return null;
             }
             inputStreamOfType2 = targetClassLoader.getResourceAsStream(type2 + ".class");
             if (null == inputStreamOfType2) {
-                return "java/lang/Object";
+                return null;
             }
             final ClassStructure classStructureOfType1 = ClassStructureFactory.createClassStructure(inputStreamOfType1, targetClassLoader);
             final ClassStructure classStructureOfType2 = ClassStructureFactory.createClassStructure(inputStreamOfType2, targetClassLoader);
@@ -59,7 +109,8 @@ public class AsmUtils {
             do {
                 classStructure = classStructure.getSuperClassStructure();
                 if (null == classStructure) {
-                    return "java/lang/Object";
+                    // 父类链没走到共同祖先就断了，说明有父类的字节码没找到
+                    return null;
                 }
             } while (!classStructureOfType2.getFamilyTypeClassStructures().contains(classStructure));
             return toInternalClassName(classStructure.getJavaClassName());
@@ -2,30 +2,34 @@ package com.jrasp.core.util;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.WeakHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 对象ID
+ * <p>
+ * 两张映射表都是并发的弱引用身份映射表：读路径不加锁，
+ * 失效映射的清理只在分配新ID时顺带进行，且同一时刻只有一个线程在清理
+ * </p>
+ */
 public class ObjectIDs {
 
     public static final int NULL_ID = 0;
 
     private final Sequencer objectIDSequencer = new Sequencer();
 
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-
-    // 全局<对象:ID>映射表
-    private final WeakHashMap<Object, Integer> objectIDMapping
-            = new WeakHashMap<Object, Integer>();
+    private final ReferenceQueue<Object> rQueue = new ReferenceQueue<Object>();
 
+    // 全局<对象:ID>映射表，键为IdentityWeakReference，查询时用IdentityLookupKey
+    private final ConcurrentHashMap<Object, Integer> objectIDMapping
+            = new ConcurrentHashMap<Object, Integer>();
 
-    // --- ObjectID : Object 的映射关系维护 ----------------------------------------+
-    private final ReferenceQueue<Object> rQueue = new ReferenceQueue<Object>(); //|
-    private final HashMap<Integer, IdentityWeakReference> identityObjectMapping //|
-            = new HashMap<Integer, IdentityWeakReference>();                    //|
-    // ---------------------------------------------------------------------------+
+    // 全局<ID:对象>映射表
+    private final ConcurrentHashMap<Integer, IdentityWeakReference> identityObjectMapping
+            = new ConcurrentHashMap<Integer, IdentityWeakReference>();
 
+    // 是否有线程正在清理失效映射
+    private final AtomicBoolean isExpunging = new AtomicBoolean(false);
 
     private ObjectIDs() {
 
@@ -37,61 +41,49 @@ public class ObjectIDs {
             return NULL_ID;
         }
 
-        rwLock.readLock().lock();
-        try {
-            final Integer objectID = objectIDMapping.get(object);
-            if (null != objectID) {
-                return objectID;
-            }
-        } finally {
-            rwLock.readLock().unlock();
-            expungeIdentityObjectMapping();
+        final Integer objectID = objectIDMapping.get(new IdentityLookupKey(object));
+        if (null != objectID) {
+            return objectID;
         }
 
-        rwLock.writeLock().lock();
-        try {
-            final Integer nextObjectID;
-            if (objectIDMapping.containsKey(object)) {
-                nextObjectID = objectIDMapping.get(object);
-            } else {
-                mapping(
-                        nextObjectID = objectIDSequencer.next(),
-                        object
-                );
-            }
-            return nextObjectID;
-        } finally {
-            rwLock.writeLock().unlock();
-        }
+        return mapping(object);
     }
 
-    private void mapping(final Integer objectID,
-                         final Object object) {
-        rwLock.writeLock().lock();
-        try {
-            // 映射 [object : objectID]
-            objectIDMapping.put(object, objectID);
+    private int mapping(final Object object) {
 
-            // 映射 [objectID : object]
-            identityObjectMapping.put(objectID, new IdentityWeakReference(objectID, object));
-        } finally {
-            rwLock.writeLock().unlock();
+        // 分配新ID的路径上顺带清理失效映射
+        expungeIdentityObjectMapping();
+
+        final IdentityWeakReference reference = new IdentityWeakReference(objectIDSequencer.next(), object);
+
+        // 先映射 [objectID : object]，ID在返回之前不会被外部看到
+        identityObjectMapping.put(reference.objectID, reference);
+
+        // 再映射 [object : objectID]，并发分配时以先映射成功的为准
+        final Integer existObjectID = objectIDMapping.putIfAbsent(reference, reference.objectID);
+        if (null != existObjectID) {
+            identityObjectMapping.remove(reference.objectID);
+            reference.clear();
+            return existObjectID;
         }
+        return reference.objectID;
     }
 
     /**
-     * 清理失效的 [objectID : object] 映射
+     * 清理失效的映射
      */
     private void expungeIdentityObjectMapping() {
-        for (Object x; (x = rQueue.poll()) != null; ) {
-            synchronized (rQueue) {
-                rwLock.writeLock().lock();
-                try {
-                    identityObjectMapping.remove(((IdentityWeakReference) x).objectID);
-                } finally {
-                    rwLock.writeLock().unlock();
-                }
+        if (!isExpunging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Object x; (x = rQueue.poll()) != null; ) {
+                final IdentityWeakReference reference = (IdentityWeakReference) x;
+                objectIDMapping.remove(reference, reference.objectID);
+                identityObjectMapping.remove(reference.objectID, reference);
             }
+        } finally {
+            isExpunging.set(false);
         }
     }
 
@@ -101,19 +93,30 @@ public class ObjectIDs {
             return null;
         }
 
-        rwLock.readLock().lock();
-        try {
-            final Object object;
-            final IdentityWeakReference reference = identityObjectMapping.get(objectID);
-            if (null != reference
-                    && null != (object = reference.get())) {
-                return (T) object;
-            } else {
-                return null;
-            }
-        } finally {
-            rwLock.readLock().unlock();
-            expungeIdentityObjectMapping();
+        final IdentityWeakReference reference = identityObjectMapping.get(objectID);
+        return null == reference
+                ? null
+                : (T) reference.get();
+    }
+
+    // 查询用的临时强引用键，以对象身份(而非equals)与映射表中的弱引用比较
+    private static class IdentityLookupKey {
+
+        private final Object referent;
+
+        private IdentityLookupKey(final Object referent) {
+            this.referent = referent;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityWeakReference
+                    && referent == ((IdentityWeakReference) obj).get();
         }
 
     }
@@ -124,10 +127,31 @@ public class ObjectIDs {
         // 对应的对象ID
         private final Integer objectID;
 
+        // 对象被回收后仍需保持不变
+        private final int hashCode;
+
         private IdentityWeakReference(final Integer objectID,
                                       final Object referent) {
             super(referent, rQueue);
             this.objectID = objectID;
+            this.hashCode = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        // 被回收的引用只与自身相等
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            final Object referent = get();
+            return null != referent
+                    && obj instanceof IdentityWeakReference
+                    && referent == ((IdentityWeakReference) obj).get();
         }
 
     }
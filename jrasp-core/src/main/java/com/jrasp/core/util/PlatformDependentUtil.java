@@ -3,6 +3,10 @@ package com.jrasp.core.util;
 import com.jrasp.api.log.Log;
 import com.jrasp.core.log.LogFactory;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
@@ -15,10 +19,57 @@ public class PlatformDependentUtil {
 
     private static final int JAVA_VERSION = javaVersion0();
 
+    // JDK13起重新形变默认不允许新增/删除方法(JDK-8192936)，需要显式打开这个VM参数
+    private static final String VM_OPTION_ALLOW_REDEFINITION_TO_ADD_DELETE_METHODS = "AllowRedefinitionToAddDeleteMethods";
+
+    private static final String HOTSPOT_DIAGNOSTIC_MXBEAN_NAME = "com.sun.management:type=HotSpotDiagnostic";
+
+    private static volatile Boolean isRedefineAddDeleteMethodsAllowed;
+
     public static int javaVersion() {
         return JAVA_VERSION;
     }
 
+    /**
+     * 重新形变时JVM是否允许新增/删除private static方法
+     * <p>
+     * JDK13之前的HotSpot允许；JDK13起需要-XX:+AllowRedefinitionToAddDeleteMethods；
+     * 其他JVM无法确定，按不允许处理
+     * </p>
+     *
+     * @return TRUE:允许
+     */
+    public static boolean isRedefineAddDeleteMethodsAllowed() {
+        if (null == isRedefineAddDeleteMethodsAllowed) {
+            isRedefineAddDeleteMethodsAllowed = isRedefineAddDeleteMethodsAllowed0();
+        }
+        return isRedefineAddDeleteMethodsAllowed;
+    }
+
+    private static boolean isRedefineAddDeleteMethodsAllowed0() {
+        final String vmName = get("java.vm.name", "");
+        if (!vmName.contains("HotSpot") && !vmName.contains("OpenJDK")) {
+            return false;
+        }
+        if (JAVA_VERSION < 13) {
+            return true;
+        }
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final CompositeData vmOption = (CompositeData) mBeanServer.invoke(
+                    new ObjectName(HOTSPOT_DIAGNOSTIC_MXBEAN_NAME),
+                    "getVMOption",
+                    new Object[]{VM_OPTION_ALLOW_REDEFINITION_TO_ADD_DELETE_METHODS},
+                    new String[]{String.class.getName()}
+            );
+            return Boolean.parseBoolean(String.valueOf(vmOption.get("value")));
+        } catch (Throwable cause) {
+            // 参数已被移除或读取失败时按不允许处理
+            logger.info(AGENT_COMMON_LOG_ID, "read vm option {} failed.", VM_OPTION_ALLOW_REDEFINITION_TO_ADD_DELETE_METHODS, cause);
+            return false;
+        }
+    }
+
     private static int javaVersion0() {
         final int majorVersion;
 
@@ -1,10 +1,28 @@
 package com.jrasp.core.util;
 
+import com.jrasp.api.annotation.Stealth;
+import com.jrasp.api.util.ConcurrentWeakIdentityMap;
+import com.jrasp.core.util.matcher.structure.ClassStructure;
+
+import static com.jrasp.core.util.matcher.structure.ClassStructureFactory.createClassStructure;
+
 public class RaspClassUtils {
 
     private static final String RASP_FAMILY_CLASS_RES_PREFIX = "com/jrasp";
     private static final String RASP_FAMILY_CLASS_RES_QATEST_PREFIX = "com/jrasp/qatest";
 
+    // ClassLoader分类标记，每类标记都带一个是否已经判断过的标记位
+    private static final int LOADER_RASP_FAMILY_CLASSIFIED = 1;
+    private static final int LOADER_RASP_FAMILY = 1 << 1;
+    private static final int LOADER_STEALTH_CLASSIFIED = 1 << 2;
+    private static final int LOADER_STEALTH = 1 << 3;
+
+    // ClassLoader : 分类标记
+    // 分类只取决于ClassLoader的类型，结果不会变化；标记值很小，装箱走Integer缓存，查找不加锁、不分配对象
+    // 只有第一次分类时才写入，并发分类时通过CAS合并标记
+    private static final ConcurrentWeakIdentityMap<ClassLoader, Integer> loaderFlagsMapping
+            = new ConcurrentWeakIdentityMap<ClassLoader, Integer>();
+
     public static boolean isComeFromRaspFamily(final String internalClassName, final ClassLoader loader) {
 
         if (null != internalClassName
@@ -13,7 +31,7 @@ public class RaspClassUtils {
         }
 
         if (null != loader
-                && isRaspPrefix(normalizeClass(loader.getClass().getName()))) {
+                && isRaspFamilyClassLoader(loader)) {
             return true;
         }
 
@@ -21,6 +39,61 @@ public class RaspClassUtils {
 
     }
 
+    /**
+     * 判断ClassLoader家族中是否有隐形基因
+     *
+     * @param loader         ClassLoader
+     * @param isEnableUnsafe 是否允许增强BootstrapClassLoader所加载的类
+     * @return TRUE:隐形ClassLoader，它加载的类不能被增强
+     */
+    public static boolean isStealthClassLoader(final ClassLoader loader, final boolean isEnableUnsafe) {
+        if (null == loader) {
+            return !isEnableUnsafe;
+        }
+        final int flags = getLoaderFlags(loader);
+        if ((flags & LOADER_STEALTH_CLASSIFIED) != 0) {
+            return (flags & LOADER_STEALTH) != 0;
+        }
+        final boolean isStealth = isStealthType(createClassStructure(loader.getClass()));
+        addLoaderFlags(loader, LOADER_STEALTH_CLASSIFIED | (isStealth ? LOADER_STEALTH : 0));
+        return isStealth;
+    }
+
+    private static boolean isRaspFamilyClassLoader(final ClassLoader loader) {
+        final int flags = getLoaderFlags(loader);
+        if ((flags & LOADER_RASP_FAMILY_CLASSIFIED) != 0) {
+            return (flags & LOADER_RASP_FAMILY) != 0;
+        }
+        final boolean isRaspFamily = isRaspPrefix(normalizeClass(loader.getClass().getName()));
+        addLoaderFlags(loader, LOADER_RASP_FAMILY_CLASSIFIED | (isRaspFamily ? LOADER_RASP_FAMILY : 0));
+        return isRaspFamily;
+    }
+
+    private static boolean isStealthType(final ClassStructure classStructure) {
+        for (final ClassStructure familyTypeClassStructure : classStructure.getFamilyTypeClassStructures()) {
+            if (Stealth.class.getName().equals(familyTypeClassStructure.getJavaClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int getLoaderFlags(final ClassLoader loader) {
+        final Integer flags = loaderFlagsMapping.get(loader);
+        return null == flags ? 0 : flags;
+    }
+
+    private static void addLoaderFlags(final ClassLoader loader, final int flags) {
+        while (true) {
+            final Integer exist = loaderFlagsMapping.putIfAbsent(loader, flags);
+            if (null == exist
+                    || (exist | flags) == exist
+                    || loaderFlagsMapping.replace(loader, exist, exist | flags)) {
+                return;
+            }
+        }
+    }
+
     private static String normalizeClass(String className) {
         return className.replace(".", "/");
     }
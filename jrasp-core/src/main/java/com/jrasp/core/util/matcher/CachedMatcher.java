@@ -0,0 +1,64 @@
+package com.jrasp.core.util.matcher;
+
+import com.jrasp.core.util.matcher.structure.ClassStructure;
+
+/**
+ * 带未匹配缓存的匹配器
+ * <p>
+ * 观察安装时通过{@link #register()}获得代数，此后已知未匹配的类直接跳过；
+ * 新增观察时只有新观察本身需要对全量类做匹配，已有观察不会被重复计算
+ * </p>
+ */
+public class CachedMatcher implements Matcher {
+
+    private final Matcher matcher;
+    private volatile int generation = UnmatchedClassCache.UNKNOWN_GENERATION;
+
+    public CachedMatcher(final Matcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * 开始使用未匹配缓存
+     */
+    public void register() {
+        if (generation == UnmatchedClassCache.UNKNOWN_GENERATION) {
+            generation = UnmatchedClassCache.instance.register();
+        }
+    }
+
+    /**
+     * 停止使用未匹配缓存
+     */
+    public void unregister() {
+        if (generation != UnmatchedClassCache.UNKNOWN_GENERATION) {
+            UnmatchedClassCache.instance.unregister(generation);
+        }
+    }
+
+    /**
+     * 判断类是否已知不会被匹配，无需解析类结构
+     *
+     * @param loader        ClassLoader
+     * @param javaClassName 类名
+     * @return TRUE:已知未匹配;FALSE:需要进行匹配
+     */
+    public boolean isUnmatched(final ClassLoader loader, final String javaClassName) {
+        return UnmatchedClassCache.instance.isUnmatched(loader, javaClassName, generation);
+    }
+
+    @Override
+    public MatchingResult matching(final ClassStructure classStructure) {
+        final ClassLoader loader = classStructure.getClassLoader();
+        final String javaClassName = classStructure.getJavaClassName();
+        if (isUnmatched(loader, javaClassName)) {
+            return new MatchingResult();
+        }
+        final MatchingResult result = matcher.matching(classStructure);
+        if (!result.isMatched()) {
+            UnmatchedClassCache.instance.markUnmatched(loader, javaClassName, generation);
+        }
+        return result;
+    }
+
+}
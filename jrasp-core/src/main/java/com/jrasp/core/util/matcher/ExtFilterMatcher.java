@@ -1,6 +1,7 @@
 package com.jrasp.core.util.matcher;
 
 import com.jrasp.api.filter.AccessFlags;
+import com.jrasp.api.filter.CapabilityFilter;
 import com.jrasp.api.filter.ExtFilter;
 import com.jrasp.api.filter.ExtFilter.ExtFilterFactory;
 import com.jrasp.api.filter.Filter;
@@ -13,27 +14,41 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import static com.jrasp.api.filter.AccessFlags.*;
+import static com.jrasp.api.filter.CapabilityFilter.*;
 import static com.jrasp.core.util.RaspStringUtils.toInternalClassName;
 
 public class ExtFilterMatcher implements Matcher {
 
     private final ExtFilter extFilter;
+    private final CapabilityFilter capabilityFilter;
+    private final int capabilities;
 
     public ExtFilterMatcher(final ExtFilter extFilter) {
         this.extFilter = extFilter;
+        this.capabilityFilter = extFilter instanceof CapabilityFilter
+                ? (CapabilityFilter) extFilter
+                : null;
+        this.capabilities = null == capabilityFilter
+                ? CapabilityFilter.CAP_ALL
+                : capabilityFilter.getCapabilities();
     }
 
-    // 获取需要匹配的类结构
-    // 如果要匹配子类就需要将这个类的所有家族成员找出
-    private Collection<ClassStructure> getWaitingMatchClassStructures(final ClassStructure classStructure) {
-        final Collection<ClassStructure> waitingMatchClassStructures = new ArrayList<ClassStructure>();
-        waitingMatchClassStructures.add(classStructure);
-        if (extFilter.isIncludeSubClasses()) {
-            waitingMatchClassStructures.addAll(classStructure.getFamilyTypeClassStructures());
-        }
-        return waitingMatchClassStructures;
+    // 过滤器是否声明了需要读取该类型信息
+    private boolean isCapable(final int capability) {
+        return (capabilities & capability) == capability;
+    }
+
+    private boolean doClassNameFilter(final String javaClassName) {
+        return null == capabilityFilter
+                || capabilityFilter.doClassNameFilter(javaClassName);
+    }
+
+    private boolean doMethodNameFilter(final String javaMethodName) {
+        return null == capabilityFilter
+                || capabilityFilter.doMethodNameFilter(javaMethodName);
     }
 
     private String[] toJavaClassNameArray(final Collection<ClassStructure> classStructures) {
@@ -47,18 +62,81 @@ public class ExtFilterMatcher implements Matcher {
         return javaClassNames.toArray(new String[0]);
     }
 
-    private boolean matchingClassStructure(ClassStructure classStructure) {
-        for (final ClassStructure wmCs : getWaitingMatchClassStructures(classStructure)) {
+    // 匹配单个类结构，先做名称粗筛，再只解析过滤器声明过的家族信息
+    private boolean matchingSingleClassStructure(final ClassStructure classStructure) {
+        final String javaClassName = classStructure.getJavaClassName();
+        if (!doClassNameFilter(javaClassName)) {
+            return false;
+        }
+        final ClassStructure superClassStructure = isCapable(CAP_SUPER_CLASS_TYPE)
+                ? classStructure.getSuperClassStructure()
+                : null;
+        return extFilter.doClassFilter(
+                toFilterAccess(classStructure.getAccess()),
+                javaClassName,
+                null == superClassStructure
+                        ? null
+                        : superClassStructure.getJavaClassName(),
+                isCapable(CAP_CLASS_INTERFACE_TYPES)
+                        ? getFamilyInterfaceJavaClassNameArray(classStructure)
+                        : null,
+                isCapable(CAP_CLASS_ANNOTATION_TYPES)
+                        ? toJavaClassNameArray(classStructure.getFamilyAnnotationTypeClassStructures())
+                        : null
+        );
+    }
 
-            // 匹配类结构
+    // 家族接口优先从类型继承索引中获取，索引信息不完整时才解析类结构
+    private String[] getFamilyInterfaceJavaClassNameArray(final ClassStructure classStructure) {
+        final Set<String> interfaceTypeNames = TypeHierarchyIndex.instance.getInterfaceTypeNames(
+                classStructure.getClassLoader(),
+                classStructure.getJavaClassName()
+        );
+        return null == interfaceTypeNames
+                ? toJavaClassNameArray(classStructure.getFamilyInterfaceClassStructures())
+                : interfaceTypeNames.toArray(new String[0]);
+    }
+
+    // 通过类型继承索引匹配家族成员，全程不解析任何家族类结构
+    // 过滤器需要注解信息(索引中没有)或索引信息不完整时返回null，由调用方回退到家族遍历
+    private Boolean matchingFamilyByIndex(final ClassStructure classStructure) {
+        final ClassLoader loader = classStructure.getClassLoader();
+        final Set<String> superTypeNames = TypeHierarchyIndex.instance.getSuperTypeNames(
+                loader,
+                classStructure.getJavaClassName()
+        );
+        if (null == superTypeNames) {
+            return null;
+        }
+        for (final String superTypeName : superTypeNames) {
+            if (!doClassNameFilter(superTypeName)) {
+                continue;
+            }
+            if (isCapable(CAP_CLASS_ANNOTATION_TYPES)) {
+                return null;
+            }
+            final Access access = TypeHierarchyIndex.instance.getAccess(loader, superTypeName);
+            if (null == access) {
+                return null;
+            }
+            final String[] interfaceTypeNames;
+            if (isCapable(CAP_CLASS_INTERFACE_TYPES)) {
+                final Set<String> interfaceTypeNameSet = TypeHierarchyIndex.instance.getInterfaceTypeNames(loader, superTypeName);
+                if (null == interfaceTypeNameSet) {
+                    return null;
+                }
+                interfaceTypeNames = interfaceTypeNameSet.toArray(new String[0]);
+            } else {
+                interfaceTypeNames = null;
+            }
             if (extFilter.doClassFilter(
-                    toFilterAccess(wmCs.getAccess()),
-                    wmCs.getJavaClassName(),
-                    null == wmCs.getSuperClassStructure()
-                            ? null
-                            : wmCs.getSuperClassStructure().getJavaClassName(),
-                    toJavaClassNameArray(wmCs.getFamilyInterfaceClassStructures()),
-                    toJavaClassNameArray(wmCs.getFamilyAnnotationTypeClassStructures())
+                    toFilterAccess(access),
+                    superTypeName,
+                    isCapable(CAP_SUPER_CLASS_TYPE)
+                            ? toSuperClassName(TypeHierarchyIndex.instance.getSuperClassName(loader, superTypeName))
+                            : null,
+                    interfaceTypeNames,
+                    null
             )) {
                 return true;
             }
@@ -66,6 +144,34 @@ public class ExtFilterMatcher implements Matcher {
         return false;
     }
 
+    // 和ClassStructure保持一致，父类为java.lang.Object时视为没有父类
+    private static String toSuperClassName(final String superClassName) {
+        return "java.lang.Object".equals(superClassName)
+                ? null
+                : superClassName;
+    }
+
+    // 先匹配类本身，只有类本身不匹配且需要匹配子类时才匹配家族成员
+    // 家族成员优先通过类型继承索引匹配，索引无法给出结论时才解析这个类的所有家族成员
+    private boolean matchingClassStructure(final ClassStructure classStructure) {
+        if (matchingSingleClassStructure(classStructure)) {
+            return true;
+        }
+        if (!extFilter.isIncludeSubClasses()) {
+            return false;
+        }
+        final Boolean isFamilyMatching = matchingFamilyByIndex(classStructure);
+        if (null != isFamilyMatching) {
+            return isFamilyMatching;
+        }
+        for (final ClassStructure familyClassStructure : classStructure.getFamilyTypeClassStructures()) {
+            if (matchingSingleClassStructure(familyClassStructure)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public MatchingResult matching(final ClassStructure classStructure) {
 
@@ -82,7 +188,12 @@ public class ExtFilterMatcher implements Matcher {
                 InputStream is = null;
                 try {
                     is = classStructure.getClassLoader().getResourceAsStream(javaClassResourceName);
-                    _matching(ClassStructureFactory.createClassStructure(is, classStructure.getClassLoader()));
+                    final ClassStructure classStructureByAsm = null == is
+                            ? null
+                            : ClassStructureFactory.createClassStructure(is, classStructure.getClassLoader());
+                    if (null != classStructureByAsm) {
+                        return _matching(classStructureByAsm);
+                    }
                 } finally {
                     IOUtils.closeQuietly(is);
                 }
@@ -106,15 +217,27 @@ public class ExtFilterMatcher implements Matcher {
         if (!matchingClassStructure(classStructure)) {
             return result;
         }
+        result.setExplicit(null != capabilityFilter
+                && capabilityFilter.isExplicitClassName(classStructure.getJavaClassName()));
 
         // 匹配BehaviorStructure
         for (final BehaviorStructure behaviorStructure : classStructure.getBehaviorStructures()) {
+            final String javaMethodName = behaviorStructure.getName();
+            if (!doMethodNameFilter(javaMethodName)) {
+                continue;
+            }
             if (extFilter.doMethodFilter(
                     toFilterAccess(behaviorStructure.getAccess()),
-                    behaviorStructure.getName(),
-                    toJavaClassNameArray(behaviorStructure.getParameterTypeClassStructures()),
-                    toJavaClassNameArray(behaviorStructure.getExceptionTypeClassStructures()),
-                    toJavaClassNameArray(behaviorStructure.getAnnotationTypeClassStructures())
+                    javaMethodName,
+                    isCapable(CAP_BEHAVIOR_PARAMETER_TYPES)
+                            ? toJavaClassNameArray(behaviorStructure.getParameterTypeClassStructures())
+                            : null,
+                    isCapable(CAP_BEHAVIOR_THROWS_TYPES)
+                            ? toJavaClassNameArray(behaviorStructure.getExceptionTypeClassStructures())
+                            : null,
+                    isCapable(CAP_BEHAVIOR_ANNOTATION_TYPES)
+                            ? toJavaClassNameArray(behaviorStructure.getAnnotationTypeClassStructures())
+                            : null
             )) {
                 result.getBehaviorStructures().add(behaviorStructure);
             }
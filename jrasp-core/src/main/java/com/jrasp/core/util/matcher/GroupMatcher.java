@@ -26,7 +26,9 @@ public abstract class GroupMatcher implements Matcher {
                 return result;
             }
             for (final Matcher subMatcher : matcherArray) {
-                result.getBehaviorStructures().addAll(subMatcher.matching(classStructure).getBehaviorStructures());
+                final MatchingResult subResult = subMatcher.matching(classStructure);
+                result.getBehaviorStructures().addAll(subResult.getBehaviorStructures());
+                result.setExplicit(result.isExplicit() || subResult.isExplicit());
             }
             return result;
         }
@@ -55,6 +57,7 @@ public abstract class GroupMatcher implements Matcher {
                     return result;
                 }
 
+                result.setExplicit(result.isExplicit() || subResult.isExplicit());
                 if (isFirst) {
                     found.addAll(subResult.getBehaviorStructures());
                     isFirst = false;
@@ -2,6 +2,12 @@ package com.jrasp.core.util.matcher;
 
 import com.jrasp.core.util.matcher.structure.ClassStructure;
 
+/**
+ * 类匹配器
+ * <p>
+ * 扫描已加载类时同一个匹配器会在多个线程上同时匹配，实现需要是线程安全的
+ * </p>
+ */
 public interface Matcher {
     MatchingResult matching(ClassStructure classStructure);
 
@@ -11,6 +11,9 @@ public class MatchingResult {
 
     private final LinkedHashSet<BehaviorStructure> behaviorStructures = new LinkedHashSet<BehaviorStructure>();
 
+    // 是否由精确指定的类名匹配上
+    private boolean isExplicit = false;
+
     /**
      * 是否匹配成功
      *
@@ -29,6 +32,19 @@ public class MatchingResult {
         return behaviorStructures;
     }
 
+    /**
+     * 是否由精确指定的类名匹配上，重新形变时优先处理
+     *
+     * @return TRUE:精确指定;FALSE:通配或子类匹配
+     */
+    public boolean isExplicit() {
+        return isExplicit;
+    }
+
+    public void setExplicit(final boolean isExplicit) {
+        this.isExplicit = isExplicit;
+    }
+
     /**
      * 获取匹配上的行为签名列表
      *
@@ -0,0 +1,135 @@
+package com.jrasp.core.util.matcher;
+
+import com.jrasp.api.util.ConcurrentWeakIdentityMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 未匹配类缓存
+ * <p>
+ * 每个观察注册时分配一个递增的代数(generation)，缓存中记录的是：
+ * 某个ClassLoader下的某个类，代数小于等于G的所有观察都没有匹配上它
+ * </p>
+ * <p>
+ * 代数只能沿着存活的观察逐个推进：代数为g的观察判定未匹配时，
+ * 只有当前记录已经覆盖了g之前最近一个存活观察，才能把记录推进到g。
+ * 观察删除不会让未匹配的结论失效，所以删除时无需清理缓存
+ * </p>
+ */
+public class UnmatchedClassCache {
+
+    public static final UnmatchedClassCache instance = new UnmatchedClassCache();
+
+    // 未知代数
+    public static final int UNKNOWN_GENERATION = 0;
+
+    private int generationSequence = UNKNOWN_GENERATION;
+
+    // 存活观察的代数
+    private final ConcurrentSkipListSet<Integer> liveGenerations = new ConcurrentSkipListSet<Integer>();
+
+    // BootstrapClassLoader所加载类的未匹配代数
+    private final ConcurrentHashMap<String, Integer> bootstrapUnmatchedGenerations
+            = new ConcurrentHashMap<String, Integer>();
+
+    // 其他ClassLoader所加载类的未匹配代数，每次形变都会查询，所以不能加锁
+    private final ConcurrentWeakIdentityMap<ClassLoader, ConcurrentHashMap<String, Integer>> loaderUnmatchedGenerations
+            = new ConcurrentWeakIdentityMap<ClassLoader, ConcurrentHashMap<String, Integer>>();
+
+    private UnmatchedClassCache() {
+
+    }
+
+    /**
+     * 注册一个存活观察
+     *
+     * @return 观察的代数
+     */
+    public synchronized int register() {
+        final int generation = ++generationSequence;
+        liveGenerations.add(generation);
+        return generation;
+    }
+
+    /**
+     * 注销一个观察
+     *
+     * @param generation 观察的代数
+     */
+    public void unregister(final int generation) {
+        liveGenerations.remove(generation);
+    }
+
+    private ConcurrentHashMap<String, Integer> getUnmatchedGenerations(final ClassLoader loader,
+                                                                      final boolean isCreateIfAbsent) {
+        if (null == loader) {
+            return bootstrapUnmatchedGenerations;
+        }
+        final ConcurrentHashMap<String, Integer> unmatchedGenerations = loaderUnmatchedGenerations.get(loader);
+        if (null != unmatchedGenerations || !isCreateIfAbsent) {
+            return unmatchedGenerations;
+        }
+        final ConcurrentHashMap<String, Integer> newUnmatchedGenerations = new ConcurrentHashMap<String, Integer>();
+        final ConcurrentHashMap<String, Integer> existUnmatchedGenerations
+                = loaderUnmatchedGenerations.putIfAbsent(loader, newUnmatchedGenerations);
+        return null == existUnmatchedGenerations ? newUnmatchedGenerations : existUnmatchedGenerations;
+    }
+
+    private int getUnmatchedGeneration(final ClassLoader loader, final String javaClassName) {
+        final ConcurrentHashMap<String, Integer> unmatchedGenerations = getUnmatchedGenerations(loader, false);
+        final Integer generation = null == unmatchedGenerations ? null : unmatchedGenerations.get(javaClassName);
+        return null == generation ? UNKNOWN_GENERATION : generation;
+    }
+
+    /**
+     * 判断类是否已知不会被该代数的观察匹配
+     *
+     * @param loader        ClassLoader
+     * @param javaClassName 类名
+     * @param generation    观察的代数
+     * @return TRUE:已知未匹配;FALSE:未知，需要进行匹配
+     */
+    public boolean isUnmatched(final ClassLoader loader,
+                               final String javaClassName,
+                               final int generation) {
+        return generation != UNKNOWN_GENERATION
+                && getUnmatchedGeneration(loader, javaClassName) >= generation;
+    }
+
+    /**
+     * 记录类没有被该代数的观察匹配上
+     *
+     * @param loader        ClassLoader
+     * @param javaClassName 类名
+     * @param generation    观察的代数
+     */
+    public void markUnmatched(final ClassLoader loader,
+                              final String javaClassName,
+                              final int generation) {
+        if (generation == UNKNOWN_GENERATION) {
+            return;
+        }
+        final Integer previousLiveGeneration = liveGenerations.lower(generation);
+        final int requiredGeneration = null == previousLiveGeneration
+                ? UNKNOWN_GENERATION
+                : previousLiveGeneration;
+        final ConcurrentHashMap<String, Integer> unmatchedGenerations = getUnmatchedGenerations(loader, true);
+        while (true) {
+            final Integer current = unmatchedGenerations.get(javaClassName);
+            final int currentGeneration = null == current ? UNKNOWN_GENERATION : current;
+
+            // 已经覆盖，或者之前还有存活观察的结论未知，都不能推进
+            if (currentGeneration >= generation
+                    || currentGeneration < requiredGeneration) {
+                return;
+            }
+            if (null == current
+                    ? null == unmatchedGenerations.putIfAbsent(javaClassName, generation)
+                    : unmatchedGenerations.replace(javaClassName, current, generation)) {
+                return;
+            }
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.jrasp.core.util.matcher;
 
 import com.jrasp.api.annotation.Stealth;
+import com.jrasp.core.enhance.weaver.asm.EventWeaver;
+import com.jrasp.core.util.RaspClassUtils;
 import com.jrasp.core.util.matcher.structure.Access;
 import com.jrasp.core.util.matcher.structure.BehaviorStructure;
 import com.jrasp.core.util.matcher.structure.ClassStructure;
@@ -10,8 +12,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-import static com.jrasp.core.util.matcher.structure.ClassStructureFactory.createClassStructure;
-
 /**
  * 不支持的类匹配
  */
@@ -66,13 +66,10 @@ public class UnsupportedMatcher implements Matcher {
 
     /*
      * 判断是否ClassLoader家族中是否有隐形基因
+     * 结果只取决于ClassLoader的类型，按ClassLoader缓存
      */
     private boolean isFromStealthClassLoader() {
-        if (null == loader) {
-            return !isEnableUnsafe;
-        }
-        return takeJavaClassNames(createClassStructure(loader.getClass()).getFamilyTypeClassStructures())
-                .contains(Stealth.class.getName());
+        return RaspClassUtils.isStealthClassLoader(loader, isEnableUnsafe);
     }
 
     /*
@@ -94,10 +91,12 @@ public class UnsupportedMatcher implements Matcher {
     /*
      * 是否不支持的方法修饰
      * 1. abstract的方法没有实现，没有必要增强
+     * 2. 织入时生成的桩方法，增强它会让钩子调用钩子
      */
     private boolean isUnsupportedBehavior(final BehaviorStructure behaviorStructure) {
         final Access access = behaviorStructure.getAccess();
-        return access.isAbstract();
+        return access.isAbstract()
+                || behaviorStructure.getName().startsWith(EventWeaver.STUB_PREFIX);
     }
 
     @Override
@@ -0,0 +1,210 @@
+package com.jrasp.core.util.matcher.structure;
+
+import com.jrasp.api.util.ConcurrentWeakIdentityMap;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 类结构缓存
+ * <p>
+ * 按ClassLoader分区，分区内按类名查找，查找过程不加锁、不分配对象；
+ * 同名类在不同ClassLoader下各自是独立的类结构，不会互相覆盖。
+ * 分区以ClassLoader弱引用为KEY，ClassLoader被回收后对应的分区随之消失
+ * </p>
+ * <p>
+ * 类结构只弱引用自己的ClassLoader，缓存的值不会让分区的KEY无法回收；
+ * 类结构用软引用持有，内存紧张时可以被GC清除，之后再用到时重新解析，被GC清除的条目在写入时顺带移除
+ * </p>
+ * <p>
+ * 每个分区最多缓存{@link #MAX_CLASS_STRUCTURES_PER_PARTITION}个类结构，超出时按近似LRU淘汰：
+ * 每次写入推进一次分区时钟，查找命中时把条目的访问时间记为当前时钟(只读时钟，不产生竞争)；
+ * 淘汰时一次移除最久未访问的{@link #EVICT_CLASS_STRUCTURES_PER_PARTITION}个条目，摊薄排序的开销
+ * </p>
+ */
+class ClassStructureCache {
+
+    static final ClassStructureCache instance = new ClassStructureCache();
+
+    // 每个分区最多缓存的类结构数量
+    private static final int MAX_CLASS_STRUCTURES_PER_PARTITION = 1024;
+
+    // 超出上限时一次淘汰的类结构数量
+    private static final int EVICT_CLASS_STRUCTURES_PER_PARTITION = MAX_CLASS_STRUCTURES_PER_PARTITION / 8;
+
+    // BootstrapClassLoader所加载类的分区
+    private final Partition bootstrapPartition = new Partition();
+
+    // 其他ClassLoader所加载类的分区
+    private final ConcurrentWeakIdentityMap<ClassLoader, Partition> loaderPartitions
+            = new ConcurrentWeakIdentityMap<ClassLoader, Partition>();
+
+    private ClassStructureCache() {
+
+    }
+
+    private Partition getPartition(final ClassLoader loader,
+                                   final boolean isCreateIfAbsent) {
+        if (null == loader) {
+            return bootstrapPartition;
+        }
+        final Partition partition = loaderPartitions.get(loader);
+        if (null != partition || !isCreateIfAbsent) {
+            return partition;
+        }
+        final Partition newPartition = new Partition();
+        final Partition existPartition = loaderPartitions.putIfAbsent(loader, newPartition);
+        return null == existPartition ? newPartition : existPartition;
+    }
+
+    /**
+     * 查找类结构
+     *
+     * @param loader        ClassLoader
+     * @param javaClassName 类名
+     * @return 类结构，没有缓存或已被GC清除时返回null
+     */
+    ClassStructure get(final ClassLoader loader,
+                       final String javaClassName) {
+        final Partition partition = getPartition(loader, false);
+        return null == partition
+                ? null
+                : partition.get(javaClassName);
+    }
+
+    /**
+     * 缓存类结构，并发解析同一个类时以先放入的为准
+     *
+     * @param loader         ClassLoader
+     * @param javaClassName  类名
+     * @param classStructure 类结构
+     * @return 缓存中的类结构
+     */
+    ClassStructure putIfAbsent(final ClassLoader loader,
+                               final String javaClassName,
+                               final ClassStructure classStructure) {
+        return getPartition(loader, true).putIfAbsent(javaClassName, classStructure);
+    }
+
+    /**
+     * 缓存分区
+     */
+    private static class Partition {
+
+        private final ReferenceQueue<ClassStructure> rQueue = new ReferenceQueue<ClassStructure>();
+
+        private final ConcurrentHashMap<String, ClassStructureReference> classStructures
+                = new ConcurrentHashMap<String, ClassStructureReference>();
+
+        // 分区时钟，每次写入推进一次
+        private final AtomicLong clock = new AtomicLong();
+
+        // 是否有线程正在淘汰
+        private final AtomicBoolean isEvicting = new AtomicBoolean(false);
+
+        ClassStructure get(final String javaClassName) {
+            final ClassStructureReference reference = classStructures.get(javaClassName);
+            if (null == reference) {
+                return null;
+            }
+            // 时钟没变时不重复写，避免命中路径上无谓的缓存行写入
+            final long now = clock.get();
+            if (reference.lastAccess != now) {
+                reference.lastAccess = now;
+            }
+            return reference.get();
+        }
+
+        ClassStructure putIfAbsent(final String javaClassName,
+                                   final ClassStructure classStructure) {
+            expunge();
+            final ClassStructureReference reference = new ClassStructureReference(javaClassName, classStructure, rQueue, clock.incrementAndGet());
+            while (true) {
+                final ClassStructureReference exist = classStructures.putIfAbsent(javaClassName, reference);
+                if (null == exist) {
+                    evictIfNecessary();
+                    return classStructure;
+                }
+                final ClassStructure existClassStructure = exist.get();
+                if (null != existClassStructure) {
+                    return existClassStructure;
+                }
+                // 已被GC清除的条目直接替换
+                if (classStructures.replace(javaClassName, exist, reference)) {
+                    return classStructure;
+                }
+            }
+        }
+
+        // 移除已被GC清除的条目
+        private void expunge() {
+            for (Object x; (x = rQueue.poll()) != null; ) {
+                final ClassStructureReference reference = (ClassStructureReference) x;
+                classStructures.remove(reference.javaClassName, reference);
+            }
+        }
+
+        // 超出上限时淘汰最久未访问的一批条目，被淘汰的类结构再用到时重新解析
+        private void evictIfNecessary() {
+            if (classStructures.size() <= MAX_CLASS_STRUCTURES_PER_PARTITION
+                    || !isEvicting.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                final List<ClassStructureReference> references = new ArrayList<ClassStructureReference>(classStructures.values());
+                final int evictCount = references.size() - MAX_CLASS_STRUCTURES_PER_PARTITION + EVICT_CLASS_STRUCTURES_PER_PARTITION;
+                if (evictCount <= 0) {
+                    return;
+                }
+
+                // 访问时间随时可能被并发修改，先取快照再排序找出淘汰的分界线
+                final long[] lastAccesses = new long[references.size()];
+                for (int index = 0; index < lastAccesses.length; index++) {
+                    lastAccesses[index] = references.get(index).lastAccess;
+                }
+                final long[] sortedLastAccesses = lastAccesses.clone();
+                Arrays.sort(sortedLastAccesses);
+                final long evictBefore = sortedLastAccesses[Math.min(evictCount, sortedLastAccesses.length) - 1];
+
+                int evicted = 0;
+                for (int index = 0; index < lastAccesses.length && evicted < evictCount; index++) {
+                    if (lastAccesses[index] <= evictBefore) {
+                        final ClassStructureReference reference = references.get(index);
+                        if (classStructures.remove(reference.javaClassName, reference)) {
+                            evicted++;
+                        }
+                    }
+                }
+            } finally {
+                isEvicting.set(false);
+            }
+        }
+
+    }
+
+    // 记住类名和最后访问时间的软引用，被GC清除后可以从分区中移除
+    private static class ClassStructureReference extends SoftReference<ClassStructure> {
+
+        private final String javaClassName;
+
+        // 最后访问时的分区时钟，只用于淘汰排序，并发写丢失无妨
+        private volatile long lastAccess;
+
+        ClassStructureReference(final String javaClassName,
+                                final ClassStructure classStructure,
+                                final ReferenceQueue<ClassStructure> rQueue,
+                                final long lastAccess) {
+            super(classStructure, rQueue);
+            this.javaClassName = javaClassName;
+            this.lastAccess = lastAccess;
+        }
+
+    }
+
+}
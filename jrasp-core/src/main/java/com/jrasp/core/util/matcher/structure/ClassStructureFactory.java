@@ -13,8 +13,22 @@ public class ClassStructureFactory {
 
     private final static Log logger = LogFactory.getLog(ClassStructureFactory.class);
 
+    /**
+     * 构造已加载类的类结构
+     * <p>
+     * 优先从类的字节码中解析，避免反射生成大量的Method/Constructor对象以及触发关联类的加载，
+     * 只有读取不到字节码时才使用反射
+     * </p>
+     *
+     * @param clazz 已加载的类
+     * @return 类结构
+     */
     public static ClassStructure createClassStructure(final Class<?> clazz) {
-        return new ClassStructureImplByJDK(clazz);
+        // 数组和基本类型没有字节码
+        if (clazz.isArray() || clazz.isPrimitive()) {
+            return new ClassStructureImplByJDK(clazz);
+        }
+        return new ClassStructureImplByLoadedClass(clazz);
     }
 
     public static ClassStructure createClassStructure(final InputStream classInputStream,
@@ -1,12 +1,9 @@
 package com.jrasp.core.util.matcher.structure;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.jrasp.api.log.Log;
 import com.jrasp.api.util.LazyGet;
 import com.jrasp.core.log.LogFactory;
 import com.jrasp.core.util.BitUtils;
-import com.jrasp.core.util.collection.Pair;
 import com.jrasp.core.util.matcher.structure.PrimitiveClassStructure.Primitive;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -14,6 +11,7 @@ import org.objectweb.asm.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -219,7 +217,10 @@ public class ClassStructureImplByAsm extends FamilyClassStructure {
     private final static Log logger = LogFactory.getLog(ClassStructureImplByAsm.class);
 
     private final ClassReader classReader;
-    private final ClassLoader loader;
+
+    // 类结构会被缓存，而缓存分区以ClassLoader弱引用为KEY，这里强引用ClassLoader会让分区永远无法回收；
+    // 为null时代表BootstrapClassLoader
+    private final WeakReference<ClassLoader> loaderRef;
     private final Access access;
 
     ClassStructureImplByAsm(final InputStream classInputStream,
@@ -230,7 +231,9 @@ public class ClassStructureImplByAsm extends FamilyClassStructure {
     ClassStructureImplByAsm(final byte[] classByteArray,
                             final ClassLoader loader) {
         this.classReader = new ClassReader(classByteArray);
-        this.loader = loader;
+        this.loaderRef = null == loader
+                ? null
+                : new WeakReference<ClassLoader>(loader);
         this.access = fixAccess();
     }
 
@@ -254,13 +257,14 @@ public class ClassStructureImplByAsm extends FamilyClassStructure {
     }
 
     private boolean isBootstrapClassLoader() {
-        return null == loader;
+        return null == loaderRef;
     }
 
     // 获取资源数据流
     // 一般而言可以从loader直接获取，如果获取不到那么这个类也会能加载成功
     // 但如果遇到来自BootstrapClassLoader的类就必须从java.lang.Object来获取
-    private InputStream getResourceAsStream(final String resourceName) {
+    private InputStream getResourceAsStream(final ClassLoader loader,
+                                            final String resourceName) {
         return isBootstrapClassLoader()
                 ? Object.class.getResourceAsStream("/" + resourceName)
                 : loader.getResourceAsStream(resourceName);
@@ -271,12 +275,6 @@ public class ClassStructureImplByAsm extends FamilyClassStructure {
         return internalClassName + ".class";
     }
 
-    private final static Cache<Pair, ClassStructure> classStructureCache
-            = CacheBuilder.newBuilder().maximumSize(1024).build();
-
-//    private final static GaLRUCache<Pair, ClassStructure> classStructureCache
-//            = new GaLRUCache<Pair, ClassStructure>(1024);
-
     // 构造一个类结构实例
     private ClassStructure newInstance(final String javaClassName) {
 
@@ -296,23 +294,25 @@ public class ClassStructureImplByAsm extends FamilyClassStructure {
             return new PrimitiveClassStructure(primitive);
         }
 
-        final Pair pair = new Pair(loader, javaClassName);
-        final ClassStructure existClassStructure = classStructureCache.getIfPresent(pair);
+        // ClassLoader已被回收，这个类结构已经没有用处了
+        final ClassLoader loader = getClassLoader();
+        if (null == loader && !isBootstrapClassLoader()) {
+            return null;
+        }
+
+        final ClassStructure existClassStructure = ClassStructureCache.instance.get(loader, javaClassName);
         if (null != existClassStructure) {
             return existClassStructure;
         } else {
 
-            final InputStream is = getResourceAsStream(internalClassNameToResourceName(toInternalClassName(javaClassName)));
+            final InputStream is = getResourceAsStream(loader, internalClassNameToResourceName(toInternalClassName(javaClassName)));
             if (null != is) {
                 try {
-                    final ClassStructure classStructure = new ClassStructureImplByAsm(is, loader);
-                    classStructureCache.put(pair, classStructure);
-                    return classStructure;
+                    return ClassStructureCache.instance.putIfAbsent(loader, javaClassName, new ClassStructureImplByAsm(is, loader));
                 } catch (Throwable cause) {
                     // ignore
                     logger.warn(AGENT_COMMON_LOG_ID,"new instance class structure by using ASM failed, will return null. class={};loader={};",
                             javaClassName, loader, cause);
-                    classStructureCache.put(pair, null);
                 } finally {
                     IOUtils.closeQuietly(is);
                 }
@@ -350,7 +350,9 @@ public class ClassStructureImplByAsm extends FamilyClassStructure {
 
     @Override
     public ClassLoader getClassLoader() {
-        return loader;
+        return isBootstrapClassLoader()
+                ? null
+                : loaderRef.get();
     }
 
     private final LazyGet<ClassStructure> superClassStructureLazyGet
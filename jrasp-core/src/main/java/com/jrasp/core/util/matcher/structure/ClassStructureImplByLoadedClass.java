@@ -0,0 +1,169 @@
+package com.jrasp.core.util.matcher.structure;
+
+import com.jrasp.api.log.Log;
+import com.jrasp.api.util.LazyGet;
+import com.jrasp.core.log.LogFactory;
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jrasp.core.log.AgentLogIdConstant.AGENT_COMMON_LOG_ID;
+import static com.jrasp.core.util.RaspStringUtils.toInternalClassName;
+
+/**
+ * 已加载类的类结构
+ * <p>
+ * 类名、ClassLoader、访问修饰符、父类和接口直接从Class上获取，不会触发反射数据的生成；
+ * 只有真正需要注解和方法信息时，才从ClassLoader中读取类的字节码用ASM解析。
+ * </p>
+ * <p>
+ * 资源查找是父优先的，子优先加载(如Tomcat)时读到的可能是同名的另一个类，
+ * 所以字节码必须来自类自身的CodeSource，并且类头中的父类和接口与Class一致才会被采用；
+ * 读取不到或对不上的类(如动态生成的类)才退化为反射实现
+ * </p>
+ */
+class ClassStructureImplByLoadedClass extends FamilyClassStructure {
+
+    private final static Log logger = LogFactory.getLog(ClassStructureImplByLoadedClass.class);
+
+    private final Class<?> clazz;
+    private final Access access;
+
+    ClassStructureImplByLoadedClass(final Class<?> clazz) {
+        this.clazz = clazz;
+        this.access = new AccessImplByJDKClass(clazz);
+    }
+
+    // 获取类的字节码资源，BootstrapClassLoader的类必须从java.lang.Object来获取
+    private URL getClassResource() {
+        final String resourceName = toInternalClassName(clazz.getName()).concat(".class");
+        final ClassLoader loader = clazz.getClassLoader();
+        return null == loader
+                ? Object.class.getResource("/" + resourceName)
+                : loader.getResource(resourceName);
+    }
+
+    // 资源必须来自定义这个类的CodeSource，没有CodeSource的类只能依赖类头校验
+    private boolean isFromCodeSource(final URL resource) {
+        final CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        final URL location = null == codeSource ? null : codeSource.getLocation();
+        return null == location
+                || resource.toExternalForm().contains(location.toExternalForm());
+    }
+
+    // 类头中的类名、父类和接口必须和已加载的Class完全一致
+    private boolean isSameClass(final ClassReader classReader) {
+        final Class<?> superClass = clazz.getSuperclass();
+        final Class<?>[] interfaceClassArray = clazz.getInterfaces();
+        final String[] interfaces = classReader.getInterfaces();
+        if (!toInternalClassName(clazz.getName()).equals(classReader.getClassName())
+                || interfaces.length != interfaceClassArray.length) {
+            return false;
+        }
+        // 接口在字节码中的父类是java.lang.Object，在Class上则为null
+        if (null != superClass
+                && !toInternalClassName(superClass.getName()).equals(classReader.getSuperName())) {
+            return false;
+        }
+        for (int index = 0; index < interfaces.length; index++) {
+            if (!toInternalClassName(interfaceClassArray[index].getName()).equals(interfaces[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 读取类的字节码，和URLClassLoader一样不缓存jar文件，避免jar文件被一直打开
+    private byte[] getClassByteArray(final URL resource) throws Exception {
+        final URLConnection connection = resource.openConnection();
+        if (connection instanceof JarURLConnection) {
+            connection.setUseCaches(false);
+        }
+        final InputStream is = connection.getInputStream();
+        try {
+            return IOUtils.toByteArray(is);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private final LazyGet<ClassStructure> delegateLazyGet = new LazyGet<ClassStructure>() {
+        @Override
+        protected ClassStructure initialValue() {
+            try {
+                final URL resource = getClassResource();
+                if (null != resource && isFromCodeSource(resource)) {
+                    final byte[] classByteArray = getClassByteArray(resource);
+                    if (isSameClass(new ClassReader(classByteArray))) {
+                        return new ClassStructureImplByAsm(classByteArray, clazz.getClassLoader());
+                    }
+                    logger.debug(AGENT_COMMON_LOG_ID, "class bytes from resource mismatch loaded class, fallback to reflection. class={};resource={};",
+                            clazz.getName(), resource);
+                }
+            } catch (Throwable cause) {
+                logger.debug(AGENT_COMMON_LOG_ID, "create class structure by class bytes failed, fallback to reflection. class={};",
+                        clazz.getName(), cause);
+            }
+            return new ClassStructureImplByJDK(clazz);
+        }
+    };
+
+    private ClassStructure getDelegate() {
+        return delegateLazyGet.get();
+    }
+
+    @Override
+    public String getJavaClassName() {
+        return clazz.getName();
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return clazz.getClassLoader();
+    }
+
+    // 父类和接口是已经加载好的Class，直接取用既准确又不需要读取字节码
+    @Override
+    public ClassStructure getSuperClassStructure() {
+        final Class<?> superClass = clazz.getSuperclass();
+        return null == superClass || Object.class.equals(superClass)
+                ? null
+                : ClassStructureFactory.createClassStructure(superClass);
+    }
+
+    @Override
+    public List<ClassStructure> getInterfaceClassStructures() {
+        final List<ClassStructure> interfaceClassStructures = new ArrayList<ClassStructure>();
+        for (final Class<?> interfaceClass : clazz.getInterfaces()) {
+            interfaceClassStructures.add(ClassStructureFactory.createClassStructure(interfaceClass));
+        }
+        return interfaceClassStructures;
+    }
+
+    @Override
+    public List<ClassStructure> getAnnotationTypeClassStructures() {
+        return getDelegate().getAnnotationTypeClassStructures();
+    }
+
+    @Override
+    public List<BehaviorStructure> getBehaviorStructures() {
+        return getDelegate().getBehaviorStructures();
+    }
+
+    @Override
+    public Access getAccess() {
+        return access;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassStructureImplByLoadedClass{" + "javaClassName='" + clazz.getName() + '\'' + '}';
+    }
+}
@@ -129,6 +129,7 @@ public abstract class FamilyClassStructure implements ClassStructure {
         return familySuperClassStructuresLazyGet.get();
     }
 
+    // 同名类在不同ClassLoader下是不同的类，不能合并成同一个类结构
     @Override
     public int hashCode() {
         return getJavaClassName().hashCode();
@@ -136,8 +137,15 @@ public abstract class FamilyClassStructure implements ClassStructure {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof ClassStructure
-                && getJavaClassName().equals(((ClassStructure) obj).getJavaClassName());
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ClassStructure)) {
+            return false;
+        }
+        final ClassStructure classStructure = (ClassStructure) obj;
+        return getClassLoader() == classStructure.getClassLoader()
+                && getJavaClassName().equals(classStructure.getJavaClassName());
     }
 
 }
@@ -0,0 +1,441 @@
+package com.jrasp.core.util.matcher.structure;
+
+import com.jrasp.api.log.Log;
+import com.jrasp.api.util.ConcurrentWeakIdentityMap;
+import com.jrasp.core.log.LogFactory;
+import com.jrasp.core.util.RaspClassUtils;
+import com.jrasp.core.util.RaspProtector;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.jrasp.core.log.AgentLogIdConstant.AGENT_COMMON_LOG_ID;
+
+/**
+ * 内存中的类型继承关系索引
+ * <p>
+ * 挂载时通过{@link Instrumentation#getAllLoadedClasses()}一次性建立，
+ * 之后由一个只读的{@link ClassFileTransformer}在类加载时增量更新；
+ * 索引按ClassLoader弱引用分区，ClassLoader被回收后对应的分区随之消失；查询不加锁
+ * </p>
+ * <p>
+ * 查询全程不做任何IO，无法确定(祖先尚未加载/未被索引)时返回null，由调用方回退到{@link ClassStructure}解析
+ * </p>
+ */
+public class TypeHierarchyIndex {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    public static final TypeHierarchyIndex instance = new TypeHierarchyIndex();
+
+    // BootstrapClassLoader所加载类的分区
+    private final LoaderTypes bootstrapLoaderTypes = new LoaderTypes();
+
+    // 其他ClassLoader所加载类的分区
+    private final ConcurrentWeakIdentityMap<ClassLoader, LoaderTypes> loaderTypesMapping
+            = new ConcurrentWeakIdentityMap<ClassLoader, LoaderTypes>();
+
+    private final ClassFileTransformer indexTransformer = new IndexClassFileTransformer();
+
+    private volatile Instrumentation inst;
+
+    private TypeHierarchyIndex() {
+
+    }
+
+    /**
+     * 建立索引并开始跟踪后续加载的类
+     *
+     * @param inst inst
+     */
+    public synchronized void init(final Instrumentation inst) {
+        if (null != this.inst) {
+            return;
+        }
+        this.inst = inst;
+
+        // 先注册形变器再扫描已加载的类，避免两者之间加载的类被遗漏
+        inst.addTransformer(indexTransformer, false);
+
+        final long beginMillis = System.currentTimeMillis();
+        int count = 0;
+        for (final Class<?> clazz : inst.getAllLoadedClasses()) {
+            try {
+                if (index(clazz)) {
+                    count++;
+                }
+            } catch (Throwable cause) {
+                // 个别类的继承信息获取失败不影响整体索引
+                logger.debug(AGENT_COMMON_LOG_ID, "index type hierarchy failed, class={};", clazz, cause);
+            }
+        }
+        logger.info(AGENT_COMMON_LOG_ID, "type hierarchy index init finished, indexed={}, cost={}ms",
+                count, System.currentTimeMillis() - beginMillis);
+    }
+
+    /**
+     * 停止跟踪并清空索引
+     */
+    public synchronized void destroy() {
+        if (null == inst) {
+            return;
+        }
+        inst.removeTransformer(indexTransformer);
+        inst = null;
+        loaderTypesMapping.clear();
+        bootstrapLoaderTypes.clear();
+    }
+
+    private boolean index(final Class<?> clazz) {
+        if (clazz.isArray() || clazz.isPrimitive()) {
+            return false;
+        }
+        final Class<?> superClass = clazz.getSuperclass();
+        final Class<?>[] interfaceClassArray = clazz.getInterfaces();
+        final String[] interfaceNames = new String[interfaceClassArray.length];
+        for (int index = 0; index < interfaceClassArray.length; index++) {
+            interfaceNames[index] = interfaceClassArray[index].getName();
+        }
+        record(
+                clazz.getClassLoader(),
+                clazz.getName(),
+                clazz.getModifiers(),
+                null == superClass ? null : superClass.getName(),
+                interfaceNames
+        );
+        return true;
+    }
+
+    /**
+     * 记录一个类的直接继承关系
+     *
+     * @param loader         定义该类的ClassLoader
+     * @param javaClassName  类名
+     * @param access         访问修饰符
+     * @param superClassName 父类名，可能为null
+     * @param interfaceNames 直接实现的接口名
+     */
+    public void record(final ClassLoader loader,
+                       final String javaClassName,
+                       final int access,
+                       final String superClassName,
+                       final String[] interfaceNames) {
+        getOrCreateLoaderTypes(loader).record(
+                new TypeNode(loader, javaClassName, access, superClassName, interfaceNames)
+        );
+    }
+
+    private LoaderTypes getLoaderTypes(final ClassLoader loader) {
+        if (null == loader) {
+            return bootstrapLoaderTypes;
+        }
+        return loaderTypesMapping.get(loader);
+    }
+
+    private LoaderTypes getOrCreateLoaderTypes(final ClassLoader loader) {
+        if (null == loader) {
+            return bootstrapLoaderTypes;
+        }
+        final LoaderTypes loaderTypes = loaderTypesMapping.get(loader);
+        if (null != loaderTypes) {
+            return loaderTypes;
+        }
+        final LoaderTypes newLoaderTypes = new LoaderTypes();
+        final LoaderTypes existLoaderTypes = loaderTypesMapping.putIfAbsent(loader, newLoaderTypes);
+        return null == existLoaderTypes ? newLoaderTypes : existLoaderTypes;
+    }
+
+    // 沿着ClassLoader链查找类型节点
+    // 同一个类名可能同时出现在链上的多个ClassLoader中(如Tomcat的子优先加载)，
+    // 这时无法确定实际使用的是哪一个，返回null由调用方回退到字节码解析
+    private TypeNode lookup(final ClassLoader loader, final String javaClassName) {
+        TypeNode found = bootstrapLoaderTypes.get(javaClassName);
+        for (ClassLoader current = loader; null != current; current = current.getParent()) {
+            final LoaderTypes loaderTypes = getLoaderTypes(current);
+            final TypeNode typeNode = null == loaderTypes ? null : loaderTypes.get(javaClassName);
+            if (null == typeNode) {
+                continue;
+            }
+            if (null != found) {
+                return null;
+            }
+            found = typeNode;
+        }
+        return found;
+    }
+
+    // 获取类型的全部祖先，只要有一个祖先无法从索引中找到就返回null
+    private Ancestors getAncestors(final ClassLoader loader, final String javaClassName) {
+        final TypeNode typeNode = lookup(loader, javaClassName);
+        return null == typeNode ? null : typeNode.getAncestors();
+    }
+
+    /**
+     * 获取类型的全部父类和接口名称(不含自身)
+     *
+     * @param loader        加载该类的ClassLoader
+     * @param javaClassName 类名
+     * @return 祖先类型名称集合；索引中信息不完整时返回null
+     */
+    public Set<String> getSuperTypeNames(final ClassLoader loader, final String javaClassName) {
+        final Ancestors ancestors = getAncestors(loader, javaClassName);
+        return null == ancestors ? null : ancestors.superTypeNames;
+    }
+
+    /**
+     * 获取类型的全部家族接口名称
+     *
+     * @param loader        加载该类的ClassLoader
+     * @param javaClassName 类名
+     * @return 家族接口名称集合；索引中信息不完整时返回null
+     */
+    public Set<String> getInterfaceTypeNames(final ClassLoader loader, final String javaClassName) {
+        final Ancestors ancestors = getAncestors(loader, javaClassName);
+        return null == ancestors ? null : ancestors.interfaceTypeNames;
+    }
+
+    /**
+     * 获取类型的访问修饰符
+     *
+     * @param loader        加载该类的ClassLoader
+     * @param javaClassName 类名
+     * @return 访问修饰符；索引中没有该类型或无法确定时返回null
+     */
+    public Access getAccess(final ClassLoader loader, final String javaClassName) {
+        final TypeNode typeNode = lookup(loader, javaClassName);
+        return null == typeNode ? null : new AccessImplByAsm(typeNode.access);
+    }
+
+    /**
+     * 获取类型的直接父类名，调用方需先通过{@link #getAccess(ClassLoader, String)}确认索引中有该类型
+     *
+     * @param loader        加载该类的ClassLoader
+     * @param javaClassName 类名
+     * @return 父类名；接口、java.lang.Object以及索引中没有的类型返回null
+     */
+    public String getSuperClassName(final ClassLoader loader, final String javaClassName) {
+        final TypeNode typeNode = lookup(loader, javaClassName);
+        return null == typeNode ? null : typeNode.superClassName;
+    }
+
+    /**
+     * 获取两个类型最近的共同父类，语义同{@code org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}
+     *
+     * @param loader         加载这两个类的ClassLoader
+     * @param javaClassName1 类名1
+     * @param javaClassName2 类名2
+     * @return 共同父类名；索引中信息不完整时返回null
+     */
+    public String getCommonSuperClassName(final ClassLoader loader,
+                                          final String javaClassName1,
+                                          final String javaClassName2) {
+        final TypeNode typeNode1 = lookup(loader, javaClassName1);
+        final TypeNode typeNode2 = lookup(loader, javaClassName2);
+        if (null == typeNode1 || null == typeNode2) {
+            return null;
+        }
+        final Ancestors ancestors1 = typeNode1.getAncestors();
+        final Ancestors ancestors2 = typeNode2.getAncestors();
+        if (null == ancestors1 || null == ancestors2) {
+            return null;
+        }
+        if (ancestors2.superTypeNames.contains(javaClassName1)) {
+            return javaClassName1;
+        }
+        if (ancestors1.superTypeNames.contains(javaClassName2)) {
+            return javaClassName2;
+        }
+        if (typeNode1.isInterface || typeNode2.isInterface) {
+            return "java.lang.Object";
+        }
+        // 沿着类型1的父类链向上找，第一个同时是类型2祖先的就是最近的共同父类
+        TypeNode current = typeNode1;
+        while (null != current.superClassName) {
+            if (ancestors2.superTypeNames.contains(current.superClassName)) {
+                return current.superClassName;
+            }
+            final ClassLoader currentLoader = current.getLoader();
+            if (null != current.loaderRef && null == currentLoader) {
+                return null;
+            }
+            if (null == (current = lookup(currentLoader, current.superClassName))) {
+                return null;
+            }
+        }
+        return "java.lang.Object";
+    }
+
+    /**
+     * 类型祖先信息，一经计算完整就不会再变化
+     */
+    private static class Ancestors {
+
+        final Set<String> superTypeNames;
+        final Set<String> interfaceTypeNames;
+
+        Ancestors(final Set<String> superTypeNames,
+                  final Set<String> interfaceTypeNames) {
+            this.superTypeNames = Collections.unmodifiableSet(superTypeNames);
+            this.interfaceTypeNames = Collections.unmodifiableSet(interfaceTypeNames);
+        }
+    }
+
+    /**
+     * 类型节点
+     */
+    private class TypeNode {
+
+        // 这里不能强引用ClassLoader，否则分区的弱引用KEY永远不会被回收
+        private final WeakReference<ClassLoader> loaderRef;
+        private final String javaClassName;
+        private final int access;
+        private final boolean isInterface;
+        private final String superClassName;
+        private final String[] interfaceNames;
+
+        // 祖先信息只在完整时缓存
+        private volatile Ancestors ancestors;
+
+        TypeNode(final ClassLoader loader,
+                 final String javaClassName,
+                 final int access,
+                 final String superClassName,
+                 final String[] interfaceNames) {
+            this.loaderRef = null == loader ? null : new WeakReference<ClassLoader>(loader);
+            this.javaClassName = javaClassName;
+            this.access = access;
+            this.isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+            this.superClassName = superClassName;
+            this.interfaceNames = null == interfaceNames ? new String[0] : interfaceNames;
+        }
+
+        ClassLoader getLoader() {
+            return null == loaderRef ? null : loaderRef.get();
+        }
+
+        Ancestors getAncestors() {
+            if (null != ancestors) {
+                return ancestors;
+            }
+            final ClassLoader loader = getLoader();
+            if (null != loaderRef && null == loader) {
+                return null;
+            }
+            final Set<String> superTypeNames = new LinkedHashSet<String>();
+            final Set<String> interfaceTypeNames = new LinkedHashSet<String>();
+            if (null != superClassName) {
+                if (!collect(loader, superClassName, superTypeNames, interfaceTypeNames)) {
+                    return null;
+                }
+            }
+            for (final String interfaceName : interfaceNames) {
+                if (!collect(loader, interfaceName, superTypeNames, interfaceTypeNames)) {
+                    return null;
+                }
+            }
+            return ancestors = new Ancestors(superTypeNames, interfaceTypeNames);
+        }
+
+        private boolean collect(final ClassLoader loader,
+                                final String name,
+                                final Set<String> superTypeNames,
+                                final Set<String> interfaceTypeNames) {
+            final TypeNode parent = lookup(loader, name);
+            if (null == parent) {
+                return false;
+            }
+            final Ancestors parentAncestors = parent.getAncestors();
+            if (null == parentAncestors) {
+                return false;
+            }
+            superTypeNames.add(parent.javaClassName);
+            if (parent.isInterface) {
+                interfaceTypeNames.add(parent.javaClassName);
+            }
+            superTypeNames.addAll(parentAncestors.superTypeNames);
+            interfaceTypeNames.addAll(parentAncestors.interfaceTypeNames);
+            return true;
+        }
+
+    }
+
+    /**
+     * 单个ClassLoader所加载的类型分区
+     */
+    private class LoaderTypes {
+
+        private final ConcurrentHashMap<String, TypeNode> typeNodes
+                = new ConcurrentHashMap<String, TypeNode>();
+
+        TypeNode get(final String javaClassName) {
+            return typeNodes.get(javaClassName);
+        }
+
+        void record(final TypeNode typeNode) {
+            typeNodes.putIfAbsent(typeNode.javaClassName, typeNode);
+        }
+
+        void clear() {
+            typeNodes.clear();
+        }
+
+    }
+
+    /**
+     * 只读形变器，只从字节码头部读取继承关系，不修改任何字节码
+     */
+    private class IndexClassFileTransformer implements ClassFileTransformer {
+
+        @Override
+        public byte[] transform(final ClassLoader loader,
+                                final String internalClassName,
+                                final Class<?> classBeingRedefined,
+                                final ProtectionDomain protectionDomain,
+                                final byte[] srcByteCodeArray) {
+
+            // 重新定义的类在加载时已经被索引过了
+            if (null != classBeingRedefined
+                    || null == internalClassName
+                    || null == srcByteCodeArray) {
+                return null;
+            }
+
+            RaspProtector.instance.enterProtecting();
+            try {
+                if (RaspClassUtils.isComeFromRaspFamily(internalClassName, loader)) {
+                    return null;
+                }
+                final ClassReader cr = new ClassReader(srcByteCodeArray);
+                final int access = cr.getAccess();
+                final boolean isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+                // 和反射保持一致，接口没有父类
+                final String superName = isInterface ? null : cr.getSuperName();
+                final String[] interfaces = cr.getInterfaces();
+                final String[] interfaceNames = new String[interfaces.length];
+                for (int index = 0; index < interfaces.length; index++) {
+                    interfaceNames[index] = interfaces[index].replace('/', '.');
+                }
+                record(
+                        loader,
+                        internalClassName.replace('/', '.'),
+                        access,
+                        null == superName ? null : superName.replace('/', '.'),
+                        interfaceNames
+                );
+            } catch (Throwable cause) {
+                // ignore
+            } finally {
+                RaspProtector.instance.exitProtecting();
+            }
+            return null;
+        }
+
+    }
+
+}
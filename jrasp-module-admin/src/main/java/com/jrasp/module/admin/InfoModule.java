@@ -5,11 +5,16 @@ import com.jrasp.api.*;
 import com.jrasp.api.Module;
 import com.jrasp.api.annotation.Command;
 import com.jrasp.api.model.RestResultUtils;
+import com.jrasp.api.resource.RetransformMonitor;
+import com.jrasp.api.resource.WovenSizeMonitor;
+import com.jrasp.api.util.BehaviorCache;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.kohsuke.MetaInfServices;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.Map;
 
 @MetaInfServices(Module.class)
 @Information(id = "info", version = "0.0.1", author = "jrasp")
@@ -21,6 +26,12 @@ public class InfoModule implements Module {
     @Resource
     private JSONObject jsonObject;
 
+    @Resource
+    private RetransformMonitor retransformMonitor;
+
+    @Resource
+    private WovenSizeMonitor wovenSizeMonitor;
+
     @Command("version")
     public void version(final PrintWriter writer) throws IOException {
         HashMap<String, Object> infoMap = new HashMap<String, Object>();
@@ -31,4 +42,43 @@ public class InfoModule implements Module {
         writer.println(jsonObject.toJSONString(RestResultUtils.success(infoMap)));
         writer.flush();
     }
+
+    @Command("retransform")
+    public void retransform(final PrintWriter writer) throws IOException {
+        HashMap<String, Object> statusMap = new HashMap<String, Object>();
+        statusMap.put("waiting", retransformMonitor.getWaitingCount());
+        statusMap.put("reTransformed", retransformMonitor.getReTransformedCount());
+        statusMap.put("failed", retransformMonitor.getFailedCount());
+        statusMap.put("throttledMillis", retransformMonitor.getThrottledMillis());
+        statusMap.put("lastPauseMillis", retransformMonitor.getLastPauseMillis());
+        statusMap.put("intervalMillis", retransformMonitor.getIntervalMillis());
+        statusMap.put("maxPauseMillisPerInterval", retransformMonitor.getMaxPauseMillisPerInterval());
+        statusMap.put("maxClassesPerInterval", retransformMonitor.getMaxClassesPerInterval());
+        writer.println(jsonObject.toJSONString(RestResultUtils.success(statusMap)));
+        writer.flush();
+    }
+
+    @Command("behaviorCache")
+    public void behaviorCache(final PrintWriter writer) throws IOException {
+        final BehaviorCache behaviorCache = BehaviorCache.instance;
+        HashMap<String, Object> statusMap = new HashMap<String, Object>();
+        statusMap.put("hit", behaviorCache.getHitCount());
+        statusMap.put("miss", behaviorCache.getMissCount());
+        statusMap.put("contended", behaviorCache.getContendedCount());
+        statusMap.put("classes", behaviorCache.getClassCount());
+        writer.println(jsonObject.toJSONString(RestResultUtils.success(statusMap)));
+        writer.flush();
+    }
+
+    @Command("wovenSize")
+    public void wovenSize(final Map<String, String> param,
+                          final PrintWriter writer) throws IOException {
+        final int limit = NumberUtils.toInt(param.get("limit"), 100);
+        HashMap<String, Object> statusMap = new HashMap<String, Object>();
+        statusMap.put("classes", wovenSizeMonitor.getClassCount());
+        statusMap.put("overInlineSizeMethods", wovenSizeMonitor.getOverInlineSizeMethodCount());
+        statusMap.put("reports", wovenSizeMonitor.list(limit));
+        writer.println(jsonObject.toJSONString(RestResultUtils.success(statusMap)));
+        writer.flush();
+    }
 }
@@ -45,16 +45,20 @@ public class Spy {
 
     private static final SelfCallBarrier selfCallBarrier = new SelfCallBarrier();
 
-    public static void spyMethodOnCallBefore(final int lineNumber,
-                                             final String owner,
-                                             final String name,
-                                             final String desc,
+    // 织入代码只判断返回结果是否为null，不需要改变流程时统一返回null
+    private static Ret toWovenRet(final Ret ret) {
+        return null == ret || ret.state == Ret.RET_STATE_NONE
+                ? null
+                : ret;
+    }
+
+    public static void spyMethodOnCallBefore(final int callSiteId,
                                              final String namespace,
                                              final int listenerId) throws Throwable {
         try {
             final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
             if (null != spyHandler) {
-                spyHandler.handleOnCallBefore(listenerId, lineNumber, owner, name, desc);
+                spyHandler.handleOnCallBefore(listenerId, callSiteId);
             }
         } catch (Throwable cause) {
             handleException(cause);
@@ -73,7 +77,7 @@ public class Spy {
         }
     }
 
-    public static void spyMethodOnCallThrows(final String throwException,
+    public static void spyMethodOnCallThrows(final Throwable throwException,
                                              final String namespace,
                                              final int listenerId) throws Throwable {
         try {
@@ -99,34 +103,66 @@ public class Spy {
         }
     }
 
+    public static long[] spyMethodOnLineCoverageBegin(final int wordCount,
+                                                      final String namespace,
+                                                      final int listenerId) throws Throwable {
+        try {
+            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            if (null != spyHandler) {
+                final long[] bitmap = spyHandler.handleOnLineCoverageBegin(listenerId, wordCount);
+                if (null != bitmap) {
+                    return bitmap;
+                }
+            }
+        } catch (Throwable cause) {
+            handleException(cause);
+        }
+        // 不需要收集行覆盖时也必须给出位图，织入代码会直接在位图上标记
+        return new long[wordCount];
+    }
+
+    public static void spyMethodOnLineCoverage(final long[] bitmap,
+                                               final int firstLineNumber,
+                                               final String namespace,
+                                               final int listenerId) throws Throwable {
+        try {
+            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            if (null != spyHandler) {
+                spyHandler.handleOnLineCoverage(listenerId, firstLineNumber, bitmap);
+            }
+        } catch (Throwable cause) {
+            handleException(cause);
+        }
+    }
+
     public static Ret spyMethodOnBefore(final Object[] argumentArray,
                                         final String namespace,
                                         final int listenerId,
-                                        final int targetClassLoaderObjectID,
+                                        final ClassLoader targetClassLoader,
                                         final String javaClassName,
                                         final String javaMethodName,
                                         final String javaMethodDesc,
                                         final Object target) throws Throwable {
         final Thread thread = Thread.currentThread();
         if (selfCallBarrier.isEnter(thread)) {
-            return Ret.RET_NONE;
+            return null;
         }
         final SelfCallBarrier.Node node = selfCallBarrier.enter(thread);
         try {
             final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
             if (null == spyHandler) {
-                return Ret.RET_NONE;
+                return null;
             }
-            return spyHandler.handleOnBefore(
-                    listenerId, targetClassLoaderObjectID, argumentArray,
+            return toWovenRet(spyHandler.handleOnBefore(
+                    listenerId, targetClassLoader, argumentArray,
                     javaClassName,
                     javaMethodName,
                     javaMethodDesc,
                     target
-            );
+            ));
         } catch (Throwable cause) {
             handleException(cause);
-            return Ret.RET_NONE;
+            return null;
         } finally {
             selfCallBarrier.exit(thread, node);
         }
@@ -137,18 +173,18 @@ public class Spy {
                                         final int listenerId) throws Throwable {
         final Thread thread = Thread.currentThread();
         if (selfCallBarrier.isEnter(thread)) {
-            return Ret.RET_NONE;
+            return null;
         }
         final SelfCallBarrier.Node node = selfCallBarrier.enter(thread);
         try {
             final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
             if (null == spyHandler) {
-                return Ret.RET_NONE;
+                return null;
             }
-            return spyHandler.handleOnReturn(listenerId, object);
+            return toWovenRet(spyHandler.handleOnReturn(listenerId, object));
         } catch (Throwable cause) {
             handleException(cause);
-            return Ret.RET_NONE;
+            return null;
         } finally {
             selfCallBarrier.exit(thread, node);
         }
@@ -159,18 +195,18 @@ public class Spy {
                                         final int listenerId) throws Throwable {
         final Thread thread = Thread.currentThread();
         if (selfCallBarrier.isEnter(thread)) {
-            return Ret.RET_NONE;
+            return null;
         }
         final SelfCallBarrier.Node node = selfCallBarrier.enter(thread);
         try {
             final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
             if (null == spyHandler) {
-                return Ret.RET_NONE;
+                return null;
             }
-            return spyHandler.handleOnThrows(listenerId, throwable);
+            return toWovenRet(spyHandler.handleOnThrows(listenerId, throwable));
         } catch (Throwable cause) {
             handleException(cause);
-            return Ret.RET_NONE;
+            return null;
         } finally {
             selfCallBarrier.exit(thread, node);
         }
@@ -178,6 +214,10 @@ public class Spy {
 
     /**
      * 返回结果
+     * <p>
+     * spyMethodOnBefore()/spyMethodOnReturn()/spyMethodOnThrows()在不需要改变流程时返回null，
+     * 只有需要立即返回或抛出异常时才返回Ret
+     * </p>
      */
     public static class Ret {
 
@@ -1,15 +1,19 @@
 package java.com.jrasp.spy;
 
 public interface SpyHandler {
-    void handleOnCallBefore(int listenerId, int lineNumber, String owner, String name, String desc) throws Throwable;
+    void handleOnCallBefore(int listenerId, int callSiteId) throws Throwable;
 
     void handleOnCallReturn(int listenerId) throws Throwable;
 
-    void handleOnCallThrows(int listenerId, String throwException) throws Throwable;
+    void handleOnCallThrows(int listenerId, Throwable throwException) throws Throwable;
 
     void handleOnLine(int listenerId, int lineNumber) throws Throwable;
 
-    Spy.Ret handleOnBefore(int listenerId, int targetClassLoaderObjectID, Object[] argumentArray, String javaClassName, String javaMethodName, String javaMethodDesc, Object target) throws Throwable;
+    long[] handleOnLineCoverageBegin(int listenerId, int wordCount) throws Throwable;
+
+    void handleOnLineCoverage(int listenerId, int firstLineNumber, long[] bitmap) throws Throwable;
+
+    Spy.Ret handleOnBefore(int listenerId, ClassLoader targetClassLoader, Object[] argumentArray, String javaClassName, String javaMethodName, String javaMethodDesc, Object target) throws Throwable;
 
     Spy.Ret handleOnThrows(int listenerId, Throwable throwable) throws Throwable;
 